@@ -2,7 +2,6 @@ package jp.ambrosoli.salmon;
 
 import jp.ambrosoli.salmon.command.CommandBuilder;
 import jp.ambrosoli.salmon.command.internal.CommandBuilderFactory;
-import jp.ambrosoli.salmon.config.SalmonInitializer;
 
 /**
  * <p>
@@ -15,10 +14,6 @@ import jp.ambrosoli.salmon.config.SalmonInitializer;
  */
 public class Salmon {
 
-    static {
-        SalmonInitializer.initialize();
-    }
-
     /**
      * <p>
      * コマンドの組み立てを開始します。
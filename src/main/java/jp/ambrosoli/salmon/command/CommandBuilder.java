@@ -2,14 +2,22 @@ package jp.ambrosoli.salmon.command;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 import jp.ambrosoli.salmon.command.CommandState.Status;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.OutputSink;
+import jp.ambrosoli.salmon.command.io.OutputSinks;
 import jp.ambrosoli.salmon.event.EventHandler;
 
 /**
@@ -34,6 +42,37 @@ public interface CommandBuilder {
      */
     CommandState execute() throws IOException, InterruptedException;
 
+    /**
+     * <p>
+     * コマンドを非同期で実行します。
+     * </p>
+     *
+     * <p>
+     * {@link #async(boolean)}の指定に関わらず、コマンドは{@link #executor(Executor)}で指定した
+     * {@link Executor}または共有の{@link Executor}で実行されます。
+     * 返却される{@link CompletionStage}は、{@link #onDone(EventHandler)}で指定したイベントハンドラの実行後に完了します。
+     * イベントハンドラで例外が発生した場合は{@link jp.ambrosoli.salmon.event.EventHandlingException}で例外的に完了します。
+     * </p>
+     *
+     * @return コマンドの終了時に{@link CommandState}で完了する{@link CompletionStage}
+     */
+    CompletionStage<CommandState> executeAsync();
+
+    /**
+     * <p>
+     * 組み立てたコマンドを不変の{@link CommandSpec}として確定します。
+     * </p>
+     *
+     * <p>
+     * {@link CommandBuilder}は同時に実行すると競合するため、同じコマンドを複数のスレッドから繰り返し実行する場合は
+     * 確定した{@link CommandSpec}を使用してください。確定した後に{@link CommandBuilder}を変更しても、
+     * {@link CommandSpec}には反映されません。
+     * </p>
+     *
+     * @return {@link CommandSpec}
+     */
+    CommandSpec build();
+
     /**
      * <p>
      * コマンドのオプションを指定します。
@@ -133,6 +172,98 @@ public interface CommandBuilder {
      */
     CommandBuilder onDone(EventHandler<CommandState> handler);
 
+    /**
+     * <p>
+     * 標準出力を1行読み取るたびに呼び出されるイベントハンドラを設定します。
+     * </p>
+     *
+     * <p>
+     * イベントハンドラはプロセスの実行中に出力を読み取るスレッドから呼び出されます。
+     * 渡される{@link CharSequence}は再利用されるため、呼び出しの間のみ有効です。
+     * 出力は{@link #charset(Charset)}で指定した文字セットでデコードされます。
+     * </p>
+     *
+     * @param handler
+     *            イベントハンドラ
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder onStdoutLine(EventHandler<CharSequence> handler);
+
+    /**
+     * <p>
+     * 標準エラー出力を1行読み取るたびに呼び出されるイベントハンドラを設定します。
+     * </p>
+     *
+     * <p>
+     * イベントハンドラはプロセスの実行中に出力を読み取るスレッドから呼び出されます。
+     * 渡される{@link CharSequence}は再利用されるため、呼び出しの間のみ有効です。
+     * 出力は{@link #charset(Charset)}で指定した文字セットでデコードされます。
+     * </p>
+     *
+     * @param handler
+     *            イベントハンドラ
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder onStderrLine(EventHandler<CharSequence> handler);
+
+    /**
+     * <p>
+     * 標準出力と標準エラー出力の文字セットを設定します。
+     * </p>
+     *
+     * <p>
+     * {@link #stdin(String)}で設定した入力もこの文字セットでエンコードされます。
+     * 設定しない場合は、プラットフォームのデフォルトの文字セットが使用されます。
+     * </p>
+     *
+     * @param charset
+     *            文字セット
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder charset(Charset charset);
+
+    /**
+     * <p>
+     * 実行結果をキャッシュする{@link CommandResultCache}を設定します。
+     * </p>
+     *
+     * <p>
+     * キャッシュに同じ{@link jp.ambrosoli.salmon.command.cache.CommandKey}の実行結果がある場合は、プロセスを起動せずに
+     * その終了コードと出力を返します。ステータスの遷移とイベントハンドラの呼び出しは、実際に実行した場合と同じように行われます。
+     * 標準入力や出力の書き込み先を設定している場合、キャッシュは使用されません。
+     * </p>
+     *
+     * @param cache
+     *            実行結果をキャッシュする{@link CommandResultCache}
+     * @return {@link CommandBuilder}
+     * @see jp.ambrosoli.salmon.command.cache.CommandKey#isCacheable(CommandParameter)
+     */
+    CommandBuilder cache(CommandResultCache cache);
+
+    /**
+     * <p>
+     * 同じコマンドの同時実行を1つのプロセスにまとめるかどうかを示すフラグを設定します。
+     * </p>
+     *
+     * <p>
+     * {@code true}を設定すると、同じ{@link jp.ambrosoli.salmon.command.cache.CommandKey}のコマンドが実行中の場合はプロセスを起動せず、
+     * 実行中のコマンドが終了するのを待ってその終了コードと出力を返します。ステータスの遷移とイベントハンドラの呼び出しは、
+     * 呼び出しごとに実際に実行した場合と同じように行われます。実行中のコマンドがエラーやタイムアウトで終了した場合は、
+     * 待っていたコマンドも同じ例外で終了します。このため、{@link #timeout(long, TimeUnit)}の設定が異なるコマンドはまとめられません。
+     * 標準入力や出力の書き込み先を設定している場合も、実行はまとめられません。
+     * </p>
+     *
+     * <p>
+     * 実行中のコマンドのイベントハンドラから、同じコマンドを同期的に実行しないでください。終了を待ち続けることになります。
+     * </p>
+     *
+     * @param singleFlight
+     *            同時実行をまとめる場合{@code true}、その他の場合{@code false}
+     * @return {@link CommandBuilder}
+     * @see jp.ambrosoli.salmon.command.cache.CommandKey#isCacheable(CommandParameter)
+     */
+    CommandBuilder singleFlight(boolean singleFlight);
+
     /**
      * <p>
      * コマンドの成否を判定するロジックを設定します。
@@ -212,6 +343,21 @@ public interface CommandBuilder {
      */
     CommandBuilder environment(Consumer<Map<String, String>> consumer);
 
+    /**
+     * <p>
+     * コマンドの環境変数の雛形を設定します。
+     * </p>
+     *
+     * <p>
+     * {@link #environment(Consumer)}も設定した場合は、雛形を適用した後に環境変数を設定するロジックが実行されます。
+     * </p>
+     *
+     * @param template
+     *            環境変数の雛形
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder environment(EnvironmentTemplate template);
+
     /**
      * <p>
      * コマンドを非同期で実行するかどうかを示すフラグを設定します。
@@ -223,6 +369,116 @@ public interface CommandBuilder {
      */
     CommandBuilder async(boolean async);
 
+    /**
+     * <p>
+     * コマンドを非同期で実行する際に使用する{@link Executor}を設定します。
+     * </p>
+     *
+     * <p>
+     * 設定しない場合は、salmon.propertiesの{@code async.pool.*}の設定値で生成される共有のスレッドプールが使用されます。
+     * </p>
+     *
+     * @param executor
+     *            コマンドを非同期で実行する{@link Executor}
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder executor(Executor executor);
+
+    /**
+     * <p>
+     * ステータスごとのイベントハンドラと{@link #onDone(EventHandler)}で指定したイベントハンドラを実行する{@link Executor}を設定します。
+     * </p>
+     *
+     * <p>
+     * 設定した場合、イベントハンドラはプロセスの終了を検知したスレッドではなく{@code executor}で実行されるため、
+     * 時間のかかるイベントハンドラがあってもプロセスの終了の検知やタイムアウトの処理は遅れません。
+     * 同じコマンドのイベントハンドラはステータスの遷移順に1件ずつ実行され、異なるコマンドのイベントハンドラは並行して実行されます。
+     * 1行ごとのイベントハンドラは、設定に関わらず出力を読み取るスレッドで実行されます。
+     * </p>
+     *
+     * <p>
+     * イベントハンドラで発生した例外は{@link #execute()}からはスローされず、{@link #executeAsync()}が返却する
+     * {@link CompletionStage}に{@link jp.ambrosoli.salmon.event.EventHandlingException}として反映されます。
+     * また、{@link #execute()}はイベントハンドラの終了を待たずに返却します。イベントハンドラの待ち時間と実行時間は
+     * {@link jp.ambrosoli.salmon.event.HandlerMetrics}で確認できます。
+     * </p>
+     *
+     * <p>
+     * 設定しない場合は、イベントハンドラはステータスを遷移させたスレッドで実行されます。
+     * </p>
+     *
+     * @param executor
+     *            イベントハンドラを実行する{@link Executor}
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder handlerExecutor(Executor executor);
+
+    /**
+     * <p>
+     * 標準入力に書き込む入力をバイト配列で設定します。
+     * </p>
+     *
+     * <p>
+     * 入力はプロセスの起動後に専用のスレッドから書き込まれ、全て書き込んだ時点で標準入力が閉じられます。
+     * 出力の読み取りと並行して書き込むため、入力と出力が大きくてもデッドロックしません。
+     * {@code input}は呼び出し時に複製されるため、呼び出し後に変更しても入力には反映されません。
+     * </p>
+     *
+     * @param input
+     *            標準入力に書き込む入力
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder stdin(byte[] input);
+
+    /**
+     * <p>
+     * 標準入力に書き込む入力を文字列で設定します。
+     * </p>
+     *
+     * <p>
+     * 入力は{@link #charset(Charset)}で設定した文字セットでエンコードされます。{@link #build()}で生成した{@link CommandSpec}
+     * では、生成時の文字セットで1回だけエンコードした入力を実行のたびに書き込みます。
+     * </p>
+     *
+     * @param input
+     *            標準入力に書き込む入力
+     * @return {@link CommandBuilder}
+     * @see #stdin(byte[])
+     */
+    CommandBuilder stdin(String input);
+
+    /**
+     * <p>
+     * 標準入力のリダイレクト元のファイルを設定します。
+     * </p>
+     *
+     * <p>
+     * ファイルはプロセスの標準入力に直接接続されるため、入力はJavaのヒープを経由せず、書き込むスレッドも使用しません。
+     * </p>
+     *
+     * @param input
+     *            標準入力のリダイレクト元
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder stdin(Path input);
+
+    /**
+     * <p>
+     * 標準入力に書き込む入力を{@link InputStream}で設定します。
+     * </p>
+     *
+     * <p>
+     * {@code input}は終端まで読み取った時点で閉じられるため、この{@link CommandBuilder}で実行できるのは1回のみです。
+     * 読み取りに失敗した場合はプロセスを強制終了し、コマンドのステータスは{@link Status#ERROR}になります。
+     * </p>
+     *
+     * @param input
+     *            標準入力に書き込む入力
+     * @return {@link CommandBuilder}
+     * @see #stdin(byte[])
+     */
+    CommandBuilder stdin(InputStream input);
+
     /**
      * <p>
      * 標準出力のリダイレクト先を設定します。
@@ -234,6 +490,45 @@ public interface CommandBuilder {
      */
     CommandBuilder redirectStdout(File redirect);
 
+    /**
+     * <p>
+     * 標準出力を追記するリダイレクト先を設定します。
+     * </p>
+     *
+     * <p>
+     * ファイルが存在する場合は末尾に追記し、存在しない場合は作成します。標準出力はプロセスから直接ファイルに書き込まれるため、
+     * Javaのヒープを経由しません。
+     * </p>
+     *
+     * @param redirect
+     *            標準出力のリダイレクト先
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder appendStdout(File redirect);
+
+    /**
+     * <p>
+     * 標準出力の書き込み先を設定します。
+     * </p>
+     *
+     * <p>
+     * {@code sink}はコマンドを実行するたびに呼び出され、生成された{@link OutputSink}にプロセスの実行中の出力が書き込まれます。
+     * 設定しない場合は{@link OutputSinks#capture()}が使用され、{@link CommandState#getStdout()}から出力を読み取れます。
+     * {@link #redirectStdout(File)}または{@link #appendStdout(File)}を設定した場合、この設定は無視されます。
+     * </p>
+     *
+     * <p>
+     * ステータスのイベントハンドラは、出力を終端まで書き込んでから呼び出されます。ただし、バックグラウンドで起動した子孫プロセスが
+     * 標準出力を引き継いでいる場合は、プロセスの終了後にsalmon.propertiesの{@code pump.drain.timeout}の値(ミリ秒)だけ待ってから
+     * {@link OutputSink}を閉じます。それ以降の出力は読み捨てられます。
+     * </p>
+     *
+     * @param sink
+     *            標準出力の書き込み先を生成する{@link Supplier}
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder stdout(Supplier<? extends OutputSink> sink);
+
     /**
      * <p>
      * 標準エラー出力のリダイレクト先を設定します。
@@ -245,6 +540,55 @@ public interface CommandBuilder {
      */
     CommandBuilder redirectStderr(File redirect);
 
+    /**
+     * <p>
+     * 標準エラー出力を追記するリダイレクト先を設定します。
+     * </p>
+     *
+     * <p>
+     * ファイルが存在する場合は末尾に追記し、存在しない場合は作成します。標準エラー出力はプロセスから直接ファイルに書き込まれるため、
+     * Javaのヒープを経由しません。
+     * </p>
+     *
+     * @param redirect
+     *            標準エラー出力のリダイレクト先
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder appendStderr(File redirect);
+
+    /**
+     * <p>
+     * 標準エラー出力の書き込み先を設定します。
+     * </p>
+     *
+     * <p>
+     * {@code sink}はコマンドを実行するたびに呼び出され、生成された{@link OutputSink}にプロセスの実行中の出力が書き込まれます。
+     * 設定しない場合は{@link OutputSinks#capture()}が使用され、{@link CommandState#getStderr()}から出力を読み取れます。
+     * {@link #redirectStderr(File)}または{@link #appendStderr(File)}を設定した場合、この設定は無視されます。
+     * 子孫プロセスが標準エラー出力を引き継いでいる場合の扱いは{@link #stdout(Supplier)}と同じです。
+     * </p>
+     *
+     * @param sink
+     *            標準エラー出力の書き込み先を生成する{@link Supplier}
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder stderr(Supplier<? extends OutputSink> sink);
+
+    /**
+     * <p>
+     * 標準出力と標準エラー出力の読み取りに使用するバッファのサイズを設定します。
+     * </p>
+     *
+     * <p>
+     * 設定しない場合は、salmon.propertiesの{@code pump.buffer.size}の設定値が使用されます。
+     * </p>
+     *
+     * @param size
+     *            バッファのサイズ(バイト)
+     * @return {@link CommandBuilder}
+     */
+    CommandBuilder pumpBufferSize(int size);
+
     /**
      * <p>
      * 標準出力を/dev/nullにリダイレクトします。
@@ -1,6 +1,8 @@
 package jp.ambrosoli.salmon.command;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * <p>
@@ -26,4 +28,30 @@ public interface CommandExecutor {
      */
     CommandState execute(CommandParameter parameter) throws IOException, InterruptedException;
 
+    /**
+     * <p>
+     * コマンドを非同期で実行し、コマンドの終了時に完了する{@link CompletionStage}を返します。
+     * </p>
+     *
+     * <p>
+     * デフォルトの実装は{@link #execute(CommandParameter)}を呼び出し元のスレッドで実行します。
+     * </p>
+     *
+     * @param parameter
+     *            パラメータ
+     * @return 全てのイベントハンドラの実行後に{@link CommandState}で完了する{@link CompletionStage}
+     */
+    default CompletionStage<CommandState> executeAsync(final CommandParameter parameter) {
+        CompletableFuture<CommandState> future = new CompletableFuture<>();
+        try {
+            future.complete(execute(parameter));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
 }
\ No newline at end of file
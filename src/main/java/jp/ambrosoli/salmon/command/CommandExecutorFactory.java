@@ -41,6 +41,21 @@ public interface CommandExecutorFactory {
         return DEFAULT_PRIORITY;
     }
 
+    /**
+     * <p>
+     * {@link CommandExecutorRegistry#get(String)}で{@link CommandExecutor}を選ぶ際に使用する名前を返します。
+     * </p>
+     *
+     * <p>
+     * デフォルトではクラスの完全修飾名を返します。
+     * </p>
+     *
+     * @return 名前
+     */
+    default String getName() {
+        return getClass().getName();
+    }
+
     /**
      * <p>
      * {@link CommandBuilder#execute()}が呼び出される環境で、このインタフェースの実装クラスが生成する
@@ -56,6 +71,10 @@ public interface CommandExecutorFactory {
      * {@link CommandExecutor}を生成します。
      * </p>
      *
+     * <p>
+     * 生成した{@link CommandExecutor}は{@link CommandExecutorRegistry}で再利用され、複数のスレッドから同時に使用されます。
+     * </p>
+     *
      * @return {@link CommandExecutor}
      */
     CommandExecutor create();
@@ -1,8 +1,14 @@
 package jp.ambrosoli.salmon.command;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 
 import jp.ambrosoli.salmon.messages.Messages;
 
@@ -11,6 +17,22 @@ import jp.ambrosoli.salmon.messages.Messages;
  * {@link CommandBuilder#execute()}が使用する{@link CommandExecutor}の種類を制御するためのクラスです。
  * </p>
  *
+ * <p>
+ * {@link CommandExecutorFactory}は、最初に{@link CommandExecutor}を取得した時点で{@link ServiceLoader}により
+ * {@code META-INF/services/jp.ambrosoli.salmon.command.CommandExecutorFactory}から読み込みます。
+ * {@link #registerFactory(CommandExecutorFactory...)}で登録したファクトリは、読み込んだファクトリに追加されます。
+ * </p>
+ *
+ * <p>
+ * 登録された{@link CommandExecutorFactory}は登録のたびに複製したリストで保持し、{@link CommandExecutor}
+ * はファクトリごとに一度だけ生成して再利用します。{@link #get()}が返す{@link CommandExecutor}も最初の呼び出しで決定してキャッシュし、
+ * 以降の呼び出しはキャッシュを参照するだけです。キャッシュは{@link #registerFactory(CommandExecutorFactory...)}で破棄されます。
+ * </p>
+ *
+ * <p>
+ * このクラスはスレッドセーフです。
+ * </p>
+ *
  * @author willard379
  * @since 0.1.0
  *
@@ -19,36 +41,110 @@ public class CommandExecutorRegistry {
 
     /**
      * <p>
-     * 登録された{@ CommandExecutorFactory}を保持するレジストリです。
+     * 登録された{@link CommandExecutorFactory}と、生成した{@link CommandExecutor}を保持するレジストリです。
      * </p>
      */
-    private static final List<CommandExecutorFactory> registry = new ArrayList<>();
+    private static volatile Registry registry;
 
     /**
      * <p>
      * {@link CommandExecutorFactory}を登録します。
      * </p>
      *
-     * @param factory
+     * @param factories
      *            {@link CommandExecutorFactory}のインスタンス
      */
-    public static void registerFactory(final CommandExecutorFactory... factories) {
-        for (CommandExecutorFactory factory : factories) {
-            registry.add(factory);
-        }
-        registry.sort(Comparator.comparing(CommandExecutorFactory::getPriority));
+    public static synchronized void registerFactory(final CommandExecutorFactory... factories) {
+        List<CommandExecutorFactory> newFactories = new ArrayList<>(current().factories);
+        Collections.addAll(newFactories, factories);
+        registry = new Registry(newFactories);
     }
 
     /**
      * <p>
-     * 使用条件を満たす、もっともプライオリティ値の高い{@link CommandExecutor}インスタンスを生成して返します。
+     * 使用条件を満たす、もっともプライオリティ値の高い{@link CommandExecutor}インスタンスを返します。
      * </p>
      *
      * @return {@link CommandExecutor}のインスタンス
      */
     public static CommandExecutor get() {
-        return registry.stream().filter(CommandExecutorFactory::isSupported).map(CommandExecutorFactory::create)
-                .findFirst().orElseThrow(() -> new IllegalStateException(
-                        Messages.getString("CommandExecutorRegistry.executor.not.found"))); //$NON-NLS-1$
+        Registry current = current();
+        CommandExecutor executor = current.preferred;
+        if (executor == null) {
+            executor = current.find(factory -> true).orElseThrow(() -> new IllegalStateException(
+                    Messages.getString("CommandExecutorRegistry.executor.not.found"))); //$NON-NLS-1$
+            current.preferred = executor;
+        }
+        return executor;
+    }
+
+    /**
+     * <p>
+     * 使用条件を満たし、名前が一致する{@link CommandExecutor}インスタンスを返します。
+     * </p>
+     *
+     * @param name
+     *            {@link CommandExecutorFactory#getName()}の値
+     * @return {@link CommandExecutor}のインスタンス
+     * @throws IllegalStateException
+     *             名前が一致する{@link CommandExecutor}が使用できない場合
+     */
+    public static CommandExecutor get(final String name) {
+        return find(factory -> factory.getName().equals(name)).orElseThrow(() -> new IllegalStateException(
+                Messages.getString("CommandExecutorRegistry.executor.not.found.name", name))); //$NON-NLS-1$
+    }
+
+    /**
+     * <p>
+     * 使用条件を満たし、{@code condition}に合致する、もっともプライオリティ値の高い{@link CommandExecutor}インスタンスを返します。
+     * </p>
+     *
+     * <p>
+     * 特定の機能を持つ{@link CommandExecutor}を選ぶ場合は、その機能を表すインタフェースを実装したファクトリを登録し、
+     * {@code condition}で判定してください。
+     * </p>
+     *
+     * @param condition
+     *            {@link CommandExecutorFactory}の条件
+     * @return {@link CommandExecutor}のインスタンス。条件に合致するものがない場合は空の{@link Optional}
+     */
+    public static Optional<CommandExecutor> find(final Predicate<? super CommandExecutorFactory> condition) {
+        return current().find(condition);
+    }
+
+    private static Registry current() {
+        Registry current = registry;
+        if (current == null) {
+            synchronized (CommandExecutorRegistry.class) {
+                if (registry == null) {
+                    List<CommandExecutorFactory> factories = new ArrayList<>();
+                    ServiceLoader.load(CommandExecutorFactory.class).forEach(factories::add);
+                    registry = new Registry(factories);
+                }
+                current = registry;
+            }
+        }
+        return current;
+    }
+
+    private static class Registry {
+
+        private final List<CommandExecutorFactory> factories;
+        private final ConcurrentMap<CommandExecutorFactory, CommandExecutor> executors = new ConcurrentHashMap<>();
+        private volatile CommandExecutor preferred;
+
+        Registry(final List<CommandExecutorFactory> factories) {
+            factories.sort(Comparator.comparing(CommandExecutorFactory::getPriority));
+            this.factories = Collections.unmodifiableList(factories);
+        }
+
+        Optional<CommandExecutor> find(final Predicate<? super CommandExecutorFactory> condition) {
+            for (CommandExecutorFactory factory : factories) {
+                if (condition.test(factory) && factory.isSupported()) {
+                    return Optional.of(executors.computeIfAbsent(factory, CommandExecutorFactory::create));
+                }
+            }
+            return Optional.empty();
+        }
     }
 }
@@ -1,14 +1,21 @@
 package jp.ambrosoli.salmon.command;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 import jp.ambrosoli.salmon.command.CommandState.Status;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.OutputSink;
 import jp.ambrosoli.salmon.event.EventHandler;
 
 /**
@@ -103,6 +110,15 @@ public interface CommandParameter {
      */
     Consumer<Map<String, String>> getEnvironment();
 
+    /**
+     * <p>
+     * 環境変数の雛形を返します。
+     * </p>
+     *
+     * @return 環境変数の雛形。設定されていない場合は{@code null}
+     */
+    EnvironmentTemplate getEnvironmentTemplate();
+
     /**
      * <p>
      * コマンドを非同期で実行するかどうかを示すフラグを返します。
@@ -112,6 +128,46 @@ public interface CommandParameter {
      */
     boolean isAsync();
 
+    /**
+     * <p>
+     * コマンドを非同期で実行する{@link Executor}を返します。
+     * </p>
+     *
+     * @return コマンドを非同期で実行する{@link Executor}。設定されていない場合は{@code null}
+     */
+    Executor getExecutor();
+
+    /**
+     * <p>
+     * イベントハンドラを実行する{@link Executor}を返します。
+     * </p>
+     *
+     * @return イベントハンドラを実行する{@link Executor}。設定されていない場合は{@code null}
+     */
+    Executor getHandlerExecutor();
+
+    /**
+     * <p>
+     * 標準入力のリダイレクト元に設定されているファイルを返します。
+     * </p>
+     *
+     * @return 標準入力のリダイレクト元に設定されているファイル
+     */
+    Path getRedirectInput();
+
+    /**
+     * <p>
+     * 標準入力に書き込む入力を生成する{@link Supplier}を返します。
+     * </p>
+     *
+     * <p>
+     * {@link Supplier}はコマンドを実行するたびに呼び出されます。
+     * </p>
+     *
+     * @return 標準入力に書き込む入力を生成する{@link Supplier}。設定されていない場合は{@code null}
+     */
+    Supplier<? extends InputStream> getStdin();
+
     /**
      * <p>
      * 標準出力のリダイレクト先に設定されているファイルを返します。
@@ -129,4 +185,94 @@ public interface CommandParameter {
      * @return 標準エラー出力のリダイレクト先に設定されているファイル
      */
     File getRedirectError();
+
+    /**
+     * <p>
+     * 標準出力をリダイレクト先のファイルに追記するかどうかを返します。
+     * </p>
+     *
+     * @return 追記する場合{@code true}、上書きする場合{@code false}
+     */
+    boolean isAppendOutput();
+
+    /**
+     * <p>
+     * 標準エラー出力をリダイレクト先のファイルに追記するかどうかを返します。
+     * </p>
+     *
+     * @return 追記する場合{@code true}、上書きする場合{@code false}
+     */
+    boolean isAppendError();
+
+    /**
+     * <p>
+     * 標準出力の書き込み先を生成する{@link Supplier}を返します。
+     * </p>
+     *
+     * @return 標準出力の書き込み先を生成する{@link Supplier}。設定されていない場合は{@code null}
+     */
+    Supplier<? extends OutputSink> getStdoutSink();
+
+    /**
+     * <p>
+     * 標準エラー出力の書き込み先を生成する{@link Supplier}を返します。
+     * </p>
+     *
+     * @return 標準エラー出力の書き込み先を生成する{@link Supplier}。設定されていない場合は{@code null}
+     */
+    Supplier<? extends OutputSink> getStderrSink();
+
+    /**
+     * <p>
+     * 出力の読み取りに使用するバッファのサイズを返します。
+     * </p>
+     *
+     * @return 出力の読み取りに使用するバッファのサイズ。設定されていない場合は{@code 0}
+     */
+    int getPumpBufferSize();
+
+    /**
+     * <p>
+     * 標準出力を1行読み取るたびに呼び出されるイベントハンドラを返します。
+     * </p>
+     *
+     * @return 標準出力を1行読み取るたびに呼び出されるイベントハンドラ
+     */
+    List<EventHandler<CharSequence>> getStdoutLineHandlers();
+
+    /**
+     * <p>
+     * 標準エラー出力を1行読み取るたびに呼び出されるイベントハンドラを返します。
+     * </p>
+     *
+     * @return 標準エラー出力を1行読み取るたびに呼び出されるイベントハンドラ
+     */
+    List<EventHandler<CharSequence>> getStderrLineHandlers();
+
+    /**
+     * <p>
+     * 標準出力と標準エラー出力の文字セットを返します。
+     * </p>
+     *
+     * @return 標準出力と標準エラー出力の文字セット。設定されていない場合は{@code null}
+     */
+    Charset getCharset();
+
+    /**
+     * <p>
+     * 実行結果をキャッシュする{@link CommandResultCache}を返します。
+     * </p>
+     *
+     * @return 実行結果をキャッシュする{@link CommandResultCache}。設定されていない場合は{@code null}
+     */
+    CommandResultCache getResultCache();
+
+    /**
+     * <p>
+     * 同じコマンドの同時実行を1つのプロセスにまとめるかどうかを示すフラグを返します。
+     * </p>
+     *
+     * @return 同時実行をまとめる場合{@code true}、その他の場合{@code false}
+     */
+    boolean isSingleFlight();
 }
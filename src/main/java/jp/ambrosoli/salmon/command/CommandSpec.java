@@ -0,0 +1,53 @@
+package jp.ambrosoli.salmon.command;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <p>
+ * {@link CommandBuilder#build()}で組み立てを確定したコマンドを表すインタフェースです。
+ * </p>
+ *
+ * <p>
+ * インスタンスは不変で、複数のスレッドから同時に何度でも実行できます。コマンド名とオプションを連結したコマンドラインや
+ * イベントハンドラの一覧は生成時に確定しているため、実行のたびに組み立て直すことはありません。
+ * ただし、{@link CommandBuilder#stdin(java.io.InputStream)}で設定した入力は一度しか読み取れないため、
+ * その場合は2回目以降の実行に入力が渡りません。
+ * </p>
+ *
+ * @see CommandBuilder#build()
+ */
+public interface CommandSpec extends CommandParameter {
+
+    /**
+     * <p>
+     * コマンドの実行を行います。
+     * </p>
+     *
+     * @return {@link CommandState}
+     * @throws IOException
+     * @throws InterruptedException
+     * @see CommandBuilder#execute()
+     */
+    CommandState execute() throws IOException, InterruptedException;
+
+    /**
+     * <p>
+     * コマンドを非同期で実行します。
+     * </p>
+     *
+     * @return コマンドの終了時に{@link CommandState}で完了する{@link CompletionStage}
+     * @see CommandBuilder#executeAsync()
+     */
+    CompletionStage<CommandState> executeAsync();
+
+    /**
+     * <p>
+     * コマンド名とオプションを連結したコマンドラインを返します。
+     * </p>
+     *
+     * @return 変更できないコマンドライン
+     */
+    List<String> getCommandLine();
+}
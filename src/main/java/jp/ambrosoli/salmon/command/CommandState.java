@@ -2,6 +2,7 @@ package jp.ambrosoli.salmon.command;
 
 import java.io.InputStream;
 
+import jp.ambrosoli.salmon.command.io.CapturedOutput;
 import jp.ambrosoli.salmon.event.Observable;
 
 /**
@@ -13,7 +14,7 @@ import jp.ambrosoli.salmon.event.Observable;
  * @since 0.1.0
  *
  */
-public interface CommandState extends Observable {
+public interface CommandState extends Observable, AutoCloseable {
 
     int RC_SUCCESS_DEFAULT = 0;
 
@@ -27,6 +28,24 @@ public interface CommandState extends Observable {
 
     InputStream getStderr();
 
+    /**
+     * <p>
+     * メモリ上に保持した標準出力を返します。
+     * </p>
+     *
+     * @return 標準出力の書き込み先が{@link CapturedOutput}の場合はその{@link CapturedOutput}、その他の場合は{@code null}
+     */
+    CapturedOutput getCapturedStdout();
+
+    /**
+     * <p>
+     * メモリ上に保持した標準エラー出力を返します。
+     * </p>
+     *
+     * @return 標準エラー出力の書き込み先が{@link CapturedOutput}の場合はその{@link CapturedOutput}、その他の場合は{@code null}
+     */
+    CapturedOutput getCapturedStderr();
+
     Throwable getThrown();
 
     Status getStatus();
@@ -42,4 +61,18 @@ public interface CommandState extends Observable {
     boolean isError();
 
     boolean isCancelled();
+
+    /**
+     * <p>
+     * 保持している標準出力と標準エラー出力を破棄します。
+     * </p>
+     *
+     * <p>
+     * {@link jp.ambrosoli.salmon.command.io.OutputSinks#spill(int)}などで一時ファイルに退避した出力は、このメソッドで削除されます。
+     * </p>
+     *
+     * @see CapturedOutput#release()
+     */
+    @Override
+    void close();
 }
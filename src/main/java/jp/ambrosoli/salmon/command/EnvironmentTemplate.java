@@ -0,0 +1,190 @@
+package jp.ambrosoli.salmon.command;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>
+ * 繰り返し使用する環境変数の雛形です。
+ * </p>
+ *
+ * <p>
+ * 現在の環境変数を引き継ぐ{@link #inherit()}、空の{@link #clean()}、指定した環境変数の{@link #of(Map)}のいずれかを基に、
+ * {@link #with(String, String)}と{@link #without(String)}で変更を加えて生成します。インスタンスは不変で、
+ * 変更後の環境変数は生成時に計算されます。
+ * </p>
+ *
+ * <p>
+ * {@link #inherit()}を基にした雛形は、現在の環境変数との差分だけをプロセスの環境変数に適用します。
+ * JDKは引き継いだ環境変数をエンコード済みの状態で保持しているため、環境変数を全て設定し直す場合に比べて、
+ * プロセスを起動するたびに行うエンコードが変更した環境変数の分だけで済みます。
+ * </p>
+ *
+ * @see CommandBuilder#environment(EnvironmentTemplate)
+ */
+public final class EnvironmentTemplate {
+
+    private static final EnvironmentTemplate INHERIT = new EnvironmentTemplate(true, Collections.emptyMap(),
+            Collections.emptySet());
+    private static final EnvironmentTemplate CLEAN = new EnvironmentTemplate(false, Collections.emptyMap(),
+            Collections.emptySet());
+
+    private final boolean inherit;
+    private final Map<String, String> overrides;
+    private final Set<String> removals;
+    private final Map<String, String> variables;
+
+    private EnvironmentTemplate(final boolean inherit, final Map<String, String> overrides,
+            final Set<String> removals) {
+        this.inherit = inherit;
+        this.overrides = overrides;
+        this.removals = removals;
+        Map<String, String> resolved = inherit ? new HashMap<>(System.getenv()) : new HashMap<>();
+        resolved.keySet().removeAll(removals);
+        resolved.putAll(overrides);
+        variables = Collections.unmodifiableMap(resolved);
+    }
+
+    /**
+     * <p>
+     * 現在の環境変数を引き継ぐ雛形を返します。
+     * </p>
+     *
+     * @return 現在の環境変数を引き継ぐ雛形
+     */
+    public static EnvironmentTemplate inherit() {
+        return INHERIT;
+    }
+
+    /**
+     * <p>
+     * 環境変数を持たない雛形を返します。
+     * </p>
+     *
+     * @return 環境変数を持たない雛形
+     */
+    public static EnvironmentTemplate clean() {
+        return CLEAN;
+    }
+
+    /**
+     * <p>
+     * 指定した環境変数だけを持つ雛形を生成します。
+     * </p>
+     *
+     * @param variables
+     *            環境変数
+     * @return 指定した環境変数だけを持つ雛形
+     */
+    public static EnvironmentTemplate of(final Map<String, String> variables) {
+        Map<String, String> copy = new HashMap<>();
+        variables.forEach((name, value) -> copy.put(Objects.requireNonNull(name), Objects.requireNonNull(value)));
+        return new EnvironmentTemplate(false, Collections.unmodifiableMap(copy), Collections.emptySet());
+    }
+
+    /**
+     * <p>
+     * 環境変数を設定した雛形を生成します。
+     * </p>
+     *
+     * @param name
+     *            環境変数名
+     * @param value
+     *            値
+     * @return 環境変数を設定した雛形
+     */
+    public EnvironmentTemplate with(final String name, final String value) {
+        Map<String, String> newOverrides = new HashMap<>(overrides);
+        newOverrides.put(Objects.requireNonNull(name), Objects.requireNonNull(value));
+        Set<String> newRemovals = new HashSet<>(removals);
+        newRemovals.remove(name);
+        return new EnvironmentTemplate(inherit, Collections.unmodifiableMap(newOverrides),
+                Collections.unmodifiableSet(newRemovals));
+    }
+
+    /**
+     * <p>
+     * 環境変数を削除した雛形を生成します。
+     * </p>
+     *
+     * @param name
+     *            環境変数名
+     * @return 環境変数を削除した雛形
+     */
+    public EnvironmentTemplate without(final String name) {
+        Map<String, String> newOverrides = new HashMap<>(overrides);
+        newOverrides.remove(name);
+        Set<String> newRemovals = new HashSet<>(removals);
+        if (inherit) {
+            // 引き継がない場合は変更後の環境変数に含まれないため、削除する環境変数として保持する必要がない
+            newRemovals.add(Objects.requireNonNull(name));
+        }
+        return new EnvironmentTemplate(inherit, Collections.unmodifiableMap(newOverrides),
+                Collections.unmodifiableSet(newRemovals));
+    }
+
+    /**
+     * <p>
+     * 変更後の環境変数を返します。
+     * </p>
+     *
+     * @return 変更できない環境変数の{@link Map}
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * <p>
+     * 現在の環境変数を引き継ぐかどうかを返します。
+     * </p>
+     *
+     * @return 現在の環境変数を引き継ぐ場合{@code true}、その他の場合{@code false}
+     */
+    public boolean isInherit() {
+        return inherit;
+    }
+
+    /**
+     * <p>
+     * 現在の環境変数のコピーである{@code environment}を、この雛形の環境変数に変更します。
+     * </p>
+     *
+     * @param environment
+     *            {@link ProcessBuilder#environment()}
+     */
+    public void applyTo(final Map<String, String> environment) {
+        if (inherit) {
+            environment.keySet().removeAll(removals);
+            environment.putAll(overrides);
+        } else {
+            environment.clear();
+            environment.putAll(variables);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return variables.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EnvironmentTemplate)) {
+            return false;
+        }
+        return variables.equals(((EnvironmentTemplate) obj).variables);
+    }
+
+    @Override
+    public String toString() {
+        return (inherit ? "inherit" : "clean") + " " + overrides + " -" + removals; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+}
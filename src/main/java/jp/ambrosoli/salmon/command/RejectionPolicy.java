@@ -0,0 +1,49 @@
+package jp.ambrosoli.salmon.command;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * <p>
+ * 非同期実行用のスレッドプールがコマンドを受け付けられない場合の振る舞いを表す列挙型です。
+ * </p>
+ *
+ * @author willard379
+ * @since 0.1.0
+ *
+ */
+public enum RejectionPolicy {
+
+    /**
+     * <p>
+     * {@link java.util.concurrent.RejectedExecutionException}をスローします。コマンドはエラー終了します。
+     * </p>
+     */
+    ABORT {
+        @Override
+        public RejectedExecutionHandler toHandler() {
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+    },
+
+    /**
+     * <p>
+     * {@link CommandBuilder#execute()}を呼び出したスレッドでコマンドを実行します。
+     * </p>
+     */
+    CALLER_RUNS {
+        @Override
+        public RejectedExecutionHandler toHandler() {
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+    };
+
+    /**
+     * <p>
+     * この振る舞いを実装した{@link RejectedExecutionHandler}を返します。
+     * </p>
+     *
+     * @return {@link RejectedExecutionHandler}
+     */
+    public abstract RejectedExecutionHandler toHandler();
+}
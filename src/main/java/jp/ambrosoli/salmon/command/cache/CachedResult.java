@@ -0,0 +1,72 @@
+package jp.ambrosoli.salmon.command.cache;
+
+/**
+ * <p>
+ * {@link CommandResultCache}に保持するコマンドの実行結果です。
+ * </p>
+ *
+ * <p>
+ * 終了コードと、メモリ上に保持した標準出力と標準エラー出力を持ちます。インスタンスは不変です。
+ * </p>
+ */
+public final class CachedResult {
+
+    private final int exitCode;
+    private final byte[] stdout;
+    private final byte[] stderr;
+
+    /**
+     * <p>
+     * 実行結果を生成します。
+     * </p>
+     *
+     * @param exitCode
+     *            終了コード
+     * @param stdout
+     *            標準出力
+     * @param stderr
+     *            標準エラー出力
+     */
+    public CachedResult(final int exitCode, final byte[] stdout, final byte[] stderr) {
+        this.exitCode = exitCode;
+        this.stdout = stdout.clone();
+        this.stderr = stderr.clone();
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * <p>
+     * 標準出力を返します。
+     * </p>
+     *
+     * @return 標準出力のコピー
+     */
+    public byte[] getStdout() {
+        return stdout.clone();
+    }
+
+    /**
+     * <p>
+     * 標準エラー出力を返します。
+     * </p>
+     *
+     * @return 標準エラー出力のコピー
+     */
+    public byte[] getStderr() {
+        return stderr.clone();
+    }
+
+    /**
+     * <p>
+     * 保持している出力のバイト数を返します。
+     * </p>
+     *
+     * @return 標準出力と標準エラー出力のバイト数の合計
+     */
+    public long size() {
+        return (long) stdout.length + stderr.length;
+    }
+}
@@ -0,0 +1,158 @@
+package jp.ambrosoli.salmon.command.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import jp.ambrosoli.salmon.command.CommandParameter;
+import jp.ambrosoli.salmon.command.EnvironmentTemplate;
+
+/**
+ * <p>
+ * 同じ結果になるコマンドの実行を識別するキーです。
+ * </p>
+ *
+ * <p>
+ * コマンド名、オプション、作業ディレクトリ、環境変数が等しい{@link CommandParameter}から生成したキーは等しくなります。
+ * 環境変数は{@link CommandParameter#getEnvironmentTemplate()}と{@link CommandParameter#getEnvironment()}を現在の環境変数のコピーに
+ * 適用した結果で比較します。
+ * ハッシュ値は生成時に計算されます。
+ * </p>
+ */
+public final class CommandKey {
+
+    private final String command;
+    private final List<String> options;
+    private final String directory;
+    private final Map<String, String> environment;
+    private final int hash;
+
+    private CommandKey(final String command, final List<String> options, final String directory,
+            final Map<String, String> environment) {
+        this.command = command;
+        this.options = options;
+        this.directory = directory;
+        this.environment = environment;
+        hash = Objects.hash(command, options, directory, environment);
+    }
+
+    /**
+     * <p>
+     * {@link CommandParameter}からキーを生成します。
+     * </p>
+     *
+     * @param parameter
+     *            コマンドのパラメータ
+     * @return キー
+     */
+    public static CommandKey of(final CommandParameter parameter) {
+        Consumer<Map<String, String>> environment = parameter.getEnvironment();
+        return of(parameter, environment != null ? applyEnvironment(parameter.getEnvironmentTemplate(), environment)
+                : null);
+    }
+
+    /**
+     * <p>
+     * 環境変数の設定を適用済みの{@link CommandParameter}からキーを生成します。
+     * </p>
+     *
+     * <p>
+     * {@link CommandParameter#getEnvironment()}を設定している場合、{@link #of(CommandParameter)}は現在の環境変数をコピーして
+     * {@link CommandParameter#getEnvironment()}を呼び出します。プロセスの起動のためにすでに適用した環境変数を{@code environment}に
+     * 渡すと、{@link CommandParameter#getEnvironment()}の呼び出しを省略できます。
+     * </p>
+     *
+     * <p>
+     * {@code environment}は{@link HashMap}にコピーして保持するため、{@link ProcessBuilder#environment()}を渡した場合も
+     * {@link #of(CommandParameter)}で生成したキーと同じハッシュ値になり、生成後に変更してもキーには影響しません。
+     * </p>
+     *
+     * @param parameter
+     *            コマンドのパラメータ
+     * @param environment
+     *            {@link CommandParameter#getEnvironment()}を適用済みの環境変数。
+     *            {@link CommandParameter#getEnvironment()}が{@code null}の場合は使用しません
+     * @return キー
+     */
+    public static CommandKey of(final CommandParameter parameter, final Map<String, String> environment) {
+        Collection<String> options = parameter.getOptions();
+        List<String> optionList = options != null ? Collections.unmodifiableList(new ArrayList<>(options))
+                : Collections.emptyList();
+        File directory = parameter.getDirectory();
+        String directoryPath = (directory != null ? directory : new File("")).getAbsolutePath(); //$NON-NLS-1$
+        Map<String, String> resolved;
+        if (parameter.getEnvironment() != null) {
+            // ProcessBuilder#environment()はバイト列からハッシュ値を計算するため、ASCII以外の値を含むとハッシュ値が一致しない
+            resolved = Collections.unmodifiableMap(new HashMap<>(environment));
+        } else {
+            // 現在の環境変数はプロセスの実行中に変わらないため、継承する場合はnullで表す
+            EnvironmentTemplate template = parameter.getEnvironmentTemplate();
+            resolved = template != null ? template.getVariables() : null;
+        }
+        return new CommandKey(parameter.getCommand(), optionList, directoryPath, resolved);
+    }
+
+    /**
+     * <p>
+     * 同じ結果を返すものとして扱える{@link CommandParameter}かどうかを返します。
+     * </p>
+     *
+     * <p>
+     * 標準入力を設定している場合や、出力をファイルにリダイレクトしている場合、出力の書き込み先を設定している場合は、
+     * 実行結果をキャッシュから返せないため{@code false}を返します。
+     * </p>
+     *
+     * @param parameter
+     *            コマンドのパラメータ
+     * @return キャッシュできる場合{@code true}、その他の場合{@code false}
+     */
+    public static boolean isCacheable(final CommandParameter parameter) {
+        return parameter.getStdin() == null && parameter.getRedirectInput() == null
+                && parameter.getRedirectOutput() == null && parameter.getRedirectError() == null
+                && parameter.getStdoutSink() == null && parameter.getStderrSink() == null;
+    }
+
+    private static Map<String, String> applyEnvironment(final EnvironmentTemplate template,
+            final Consumer<Map<String, String>> environment) {
+        Map<String, String> resolved = new HashMap<>(template != null ? template.getVariables() : System.getenv());
+        environment.accept(resolved);
+        return resolved;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public List<String> getOptions() {
+        return options;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CommandKey)) {
+            return false;
+        }
+        CommandKey other = (CommandKey) obj;
+        return hash == other.hash && Objects.equals(command, other.command) && options.equals(other.options)
+                && directory.equals(other.directory) && Objects.equals(environment, other.environment);
+    }
+
+    @Override
+    public String toString() {
+        return command + " " + options + " @" + directory; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
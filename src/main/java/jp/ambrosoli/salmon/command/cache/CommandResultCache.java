@@ -0,0 +1,229 @@
+package jp.ambrosoli.salmon.command.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.ambrosoli.salmon.messages.Messages;
+
+/**
+ * <p>
+ * 同じ結果を返すコマンドの実行結果を保持するキャッシュです。
+ * </p>
+ *
+ * <p>
+ * {@link jp.ambrosoli.salmon.command.CommandBuilder#cache(CommandResultCache)}で設定すると、{@link CommandKey}
+ * が等しいコマンドの実行結果をプロセスを起動せずに返します。キャッシュするのはコマンドが終了コードを返して終了した場合のみで、
+ * エラーやタイムアウトで終了した場合はキャッシュしません。
+ * </p>
+ *
+ * <p>
+ * 実行結果は次の条件で破棄されます。
+ * </p>
+ * <ul>
+ * <li>保持している実行結果の数が{@code maxEntries}を超えた場合、最も長く参照されていないものから破棄します。</li>
+ * <li>保持している出力のバイト数の合計が{@code maxBytes}を超えた場合、最も長く参照されていないものから破棄します。
+ * 出力が{@code maxBytes}を超える実行結果はキャッシュしません。</li>
+ * <li>キャッシュしてから{@code ttl}が経過した実行結果は、次に参照した時点で破棄します。</li>
+ * </ul>
+ *
+ * <p>
+ * このクラスはスレッドセーフです。
+ * </p>
+ */
+public class CommandResultCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LinkedHashMap<CommandKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private long bytes;
+
+    /**
+     * <p>
+     * キャッシュを生成します。
+     * </p>
+     *
+     * @param maxEntries
+     *            保持する実行結果の最大数
+     * @param maxBytes
+     *            保持する出力のバイト数の上限
+     * @param ttl
+     *            実行結果を保持する期間
+     * @param unit
+     *            {@code ttl}の単位
+     * @throws IllegalArgumentException
+     *             {@code maxEntries}、{@code maxBytes}、{@code ttl}のいずれかが0以下の場合
+     */
+    public CommandResultCache(final int maxEntries, final long maxBytes, final long ttl, final TimeUnit unit) {
+        this.maxEntries = (int) requirePositive(maxEntries);
+        this.maxBytes = requirePositive(maxBytes);
+        this.ttlNanos = unit.toNanos(requirePositive(ttl));
+    }
+
+    /**
+     * <p>
+     * キーに対応する実行結果を返します。
+     * </p>
+     *
+     * @param key
+     *            キー
+     * @return 実行結果。保持していない場合や期限が切れている場合は{@code null}
+     */
+    public CachedResult get(final CommandKey key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdAt < ttlNanos) {
+                hitCount.incrementAndGet();
+                return entry.result;
+            }
+            if (entry != null) {
+                remove(key, entry);
+                evictionCount.incrementAndGet();
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * <p>
+     * 実行結果を保持します。
+     * </p>
+     *
+     * @param key
+     *            キー
+     * @param result
+     *            実行結果
+     */
+    public synchronized void put(final CommandKey key, final CachedResult result) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.result.size();
+        }
+        if (result.size() > maxBytes) {
+            return;
+        }
+        entries.put(key, new Entry(result, System.nanoTime()));
+        bytes += result.size();
+        evict();
+    }
+
+    /**
+     * <p>
+     * キーに対応する実行結果を破棄します。
+     * </p>
+     *
+     * @param key
+     *            キー
+     */
+    public synchronized void invalidate(final CommandKey key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    /**
+     * <p>
+     * 全ての実行結果を破棄します。
+     * </p>
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0L;
+    }
+
+    /**
+     * <p>
+     * 保持している実行結果の数を返します。
+     * </p>
+     *
+     * @return 保持している実行結果の数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * <p>
+     * 保持している出力のバイト数の合計を返します。
+     * </p>
+     *
+     * @return 保持している出力のバイト数の合計
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * キャッシュから実行結果を返した回数を返します。
+     * </p>
+     *
+     * @return キャッシュから実行結果を返した回数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * <p>
+     * キャッシュに実行結果がなかった回数を返します。
+     * </p>
+     *
+     * @return キャッシュに実行結果がなかった回数
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * <p>
+     * 上限または期限により実行結果を破棄した回数を返します。
+     * </p>
+     *
+     * @return 実行結果を破棄した回数
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<CommandKey, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            // アクセス順のため、先頭が最も長く参照されていない実行結果となる
+            bytes -= iterator.next().getValue().result.size();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void remove(final CommandKey key, final Entry entry) {
+        entries.remove(key);
+        bytes -= entry.result.size();
+    }
+
+    private static long requirePositive(final long value) {
+        if (value <= 0L) {
+            throw new IllegalArgumentException(Messages.getString("CommandResultCache.error.limit", value)); //$NON-NLS-1$
+        }
+        return value;
+    }
+
+    private static class Entry {
+
+        private final CachedResult result;
+        private final long createdAt;
+
+        Entry(final CachedResult result, final long createdAt) {
+            this.result = result;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -2,16 +2,23 @@ package jp.ambrosoli.salmon.command.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 import jp.ambrosoli.salmon.command.CommandExecutor;
 import jp.ambrosoli.salmon.command.CommandParameter;
+import jp.ambrosoli.salmon.command.CommandSpec;
 import jp.ambrosoli.salmon.command.CommandState;
+import jp.ambrosoli.salmon.command.EnvironmentTemplate;
 import jp.ambrosoli.salmon.event.EventHandlingException;
 import jp.ambrosoli.salmon.messages.Messages;
 
@@ -19,45 +26,245 @@ public abstract class AbstractCommandExecutor implements CommandExecutor {
 
     @Override
     public CommandState execute(final CommandParameter parameter) throws IOException, InterruptedException {
-        CommandStateManager manager = new CommandStateManager(parameter);
+        ProcessBuilder builder = createProcessBuilder(parameter);
+        CommandStateManager manager = new CommandStateManager(parameter, builder);
+        if (manager.replayCachedResult()) {
+            return manager.getState();
+        }
+        if (manager.joinInFlight()) {
+            if (parameter.isAsync()) {
+                followAsync(parameter, manager);
+            } else {
+                follow(manager);
+            }
+        } else if (parameter.isAsync()) {
+            runAsync(builder, parameter, manager);
+        } else {
+            runProcess(builder, parameter, manager);
+        }
+        return manager.getState();
+    }
+
+    @Override
+    public CompletionStage<CommandState> executeAsync(final CommandParameter parameter) {
+        ProcessBuilder builder = createProcessBuilder(parameter);
+        CommandStateManager manager = new CommandStateManager(parameter, builder);
+        try {
+            if (!manager.replayCachedResult()) {
+                if (manager.joinInFlight()) {
+                    followAsync(parameter, manager);
+                } else {
+                    runAsync(builder, parameter, manager);
+                }
+            }
+        } catch (RejectedExecutionException | EventHandlingException e) {
+            // notifyError()とnotifyFinished()でCompletionStageに反映されるため何もしない
+        }
+        return manager.getCompletion();
+    }
+
+    protected ProcessBuilder createProcessBuilder(final CommandParameter parameter) {
         ProcessBuilder builder = new ProcessBuilder();
         setCommand(builder, parameter);
         setDirectory(builder, parameter);
         setEnvironment(builder, parameter);
         setRedirectFile(builder, parameter);
-        if (parameter.isAsync()) {
-            Thread thread = new Thread(() -> {
-                try {
-                    runProcess(builder, parameter, manager);
-                } catch (IOException | InterruptedException e) {
-                    // notifyError()で通知されるため何もしない
+        return builder;
+    }
+
+    protected void runAsync(final ProcessBuilder builder, final CommandParameter parameter,
+            final CommandStateManager manager) {
+        Executor executor = AsyncEngine.resolve(parameter.getExecutor());
+        try {
+            executor.execute(() -> startProcess(builder, parameter, manager, executor));
+        } catch (RejectedExecutionException e) {
+            try {
+                manager.notifyError(e);
+            } finally {
+                manager.notifyFinished();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * <p>
+     * プロセスを起動し、終了の監視を{@link ProcessReaper}に委譲します。
+     * </p>
+     *
+     * <p>
+     * プロセスの終了を待つスレッドは占有せず、終了後のイベント処理は{@code executor}で実行します。
+     * </p>
+     */
+    private void startProcess(final ProcessBuilder builder, final CommandParameter parameter,
+            final CommandStateManager manager, final Executor executor) {
+        Process process;
+        try {
+            process = manager.startProcess(builder);
+        } catch (EventHandlingException e) {
+            finishSilently(manager);
+            return;
+        } catch (Throwable thrown) {
+            notifyErrorSilently(manager, thrown);
+            finishSilently(manager);
+            return;
+        }
+        TimeoutWheel.Timeout timeout = scheduleTimeout(process, parameter, manager);
+        ProcessReaper.getInstance().register(process, exited -> {
+            try {
+                if (timeout != null) {
+                    timeout.cancel();
                 }
-            });
-            thread.start();
-        } else {
-            runProcess(builder, parameter, manager);
+                manager.whenOutputDrained(() -> dispatch(executor, manager, () -> {
+                    try {
+                        notifyExit(exited, manager);
+                    } catch (EventHandlingException e) {
+                        // イベントハンドラで通知済みのため何もしない
+                    } catch (Throwable thrown) {
+                        notifyErrorSilently(manager, thrown);
+                    } finally {
+                        finishSilently(manager);
+                    }
+                }));
+            } catch (Throwable thrown) {
+                // ProcessReaperはリスナーの例外を無視するため、ここでエラーとして終了させないとCompletionStageが完了しない
+                notifyErrorSilently(manager, thrown);
+                finishSilently(manager);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * 実行中の同じコマンドの終了を待ち、その実行結果でコマンドを終了させます。
+     * </p>
+     *
+     * <p>
+     * 待機中に割り込まれた場合は、{@link #runProcess(ProcessBuilder, CommandParameter, CommandStateManager)}と同じく
+     * エラーとして終了させてから例外をスローします。
+     * </p>
+     */
+    private static void follow(final CommandStateManager manager) throws InterruptedException {
+        try {
+            manager.awaitInFlight();
+        } catch (InterruptedException e) {
+            try {
+                manager.notifyError(e);
+            } finally {
+                manager.notifyFinished();
+            }
+            throw e;
+        }
+        manager.replayInFlightResult();
+    }
+
+    /**
+     * <p>
+     * 実行中の同じコマンドが終了した時点で、その実行結果でコマンドを終了させます。
+     * </p>
+     *
+     * <p>
+     * 待機するスレッドは占有せず、終了後のイベント処理は{@code executor}で実行します。
+     * </p>
+     */
+    private static void followAsync(final CommandParameter parameter, final CommandStateManager manager) {
+        Executor executor = AsyncEngine.resolve(parameter.getExecutor());
+        manager.whenInFlightDone(() -> dispatch(executor, manager, () -> {
+            try {
+                manager.replayInFlightResult();
+            } catch (EventHandlingException e) {
+                // イベントハンドラで通知済みのため何もしない
+            }
+        }));
+    }
+
+    /**
+     * <p>
+     * プロセスの終了後の処理を{@code executor}で実行します。
+     * </p>
+     *
+     * <p>
+     * 呼び出し元は{@link ProcessReaper}の監視スレッドまたは出力を読み取るスレッドです。これらのスレッドでイベントハンドラを実行すると、
+     * 他のプロセスの終了の検知が遅れるため、{@code executor}が実行を拒否した場合や{@code CALLER_RUNS}のように呼び出し元のスレッドで
+     * 実行しようとした場合は、{@link AsyncEngine#overflowThreads()}で実行します。
+     * </p>
+     *
+     * <p>
+     * 呼び出し元の{@link java.util.concurrent.CompletableFuture}や{@link ProcessReaper}は例外を無視するため、
+     * {@code executor}がその他の例外をスローした場合は、ここでコマンドをエラーとして終了させます。
+     * </p>
+     */
+    private static void dispatch(final Executor executor, final CommandStateManager manager, final Runnable task) {
+        DispatchedTask dispatched = new DispatchedTask(task);
+        try {
+            executor.execute(dispatched);
+        } catch (RejectedExecutionException e) {
+            // 終了の通知は失わないよう、受け付けられない場合は別のスレッドで実行する
+            AsyncEngine.overflowThreads().execute(task);
+        } catch (Throwable thrown) {
+            notifyErrorSilently(manager, thrown);
+            finishSilently(manager);
+        } finally {
+            dispatched.submitted = true;
+        }
+    }
+
+    /**
+     * <p>
+     * {@link Executor#execute(Runnable)}の呼び出し中に呼び出し元のスレッドで実行された場合に、処理を別のスレッドに移す{@link Runnable}です。
+     * </p>
+     */
+    private static class DispatchedTask implements Runnable {
+
+        private final Runnable task;
+        private final Thread caller = Thread.currentThread();
+        private volatile boolean submitted;
+
+        DispatchedTask(final Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!submitted && Thread.currentThread() == caller) {
+                AsyncEngine.overflowThreads().execute(task);
+            } else {
+                task.run();
+            }
+        }
+    }
+
+    private static void notifyErrorSilently(final CommandStateManager manager, final Throwable thrown) {
+        try {
+            manager.notifyError(thrown);
+        } catch (EventHandlingException e) {
+            // イベントハンドラで通知済みのため何もしない
+        }
+    }
+
+    private static void finishSilently(final CommandStateManager manager) {
+        try {
+            manager.notifyFinished();
+        } catch (EventHandlingException e) {
+            // CompletionStageに反映済みのため何もしない
         }
-        return manager.getState();
     }
 
     protected void runProcess(final ProcessBuilder builder, final CommandParameter parameter,
             final CommandStateManager manager) throws IOException, InterruptedException {
         try {
             Process process = manager.startProcess(builder);
-            if (parameter.getTimeoutUnit() != null) {
-                if (!process.waitFor(parameter.getTimeout(), parameter.getTimeoutUnit())) {
-                    process.destroyForcibly();
-                    TimeoutException exception = new TimeoutException(
-                            Messages.getString("CommandExecutor.command.timeout", parameter.getTimeout(), //$NON-NLS-1$
-                                    Messages.getString(parameter.getTimeoutUnit().name())));
-                    manager.notifyCancelled(process.exitValue(), exception);
-                } else {
-                    manager.notifyEnded(process.exitValue());
+            TimeoutWheel.Timeout timeout = scheduleTimeout(process, parameter, manager);
+            try {
+                // タイムアウトした場合はTimeoutWheelが強制終了するため、終了コードを取得できるまで待つ
+                VirtualThreadSupport.waitFor(process);
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel();
                 }
-            } else {
-                process.waitFor();
-                manager.notifyEnded(process.exitValue());
             }
+            manager.awaitOutput();
+            notifyExit(process, manager);
         } catch (EventHandlingException e) {
             // この例外が発生した場合はすでにイベント処理が実行済みのため、そのまま例外をスローする
             throw e;
@@ -69,7 +276,40 @@ public abstract class AbstractCommandExecutor implements CommandExecutor {
         }
     }
 
+    private static TimeoutWheel.Timeout scheduleTimeout(final Process process, final CommandParameter parameter,
+            final CommandStateManager manager) {
+        if (parameter.getTimeoutUnit() == null) {
+            return null;
+        }
+        return TimeoutWheel.getInstance().schedule(parameter.getTimeout(), parameter.getTimeoutUnit(), () -> {
+            TimeoutException exception = new TimeoutException(
+                    Messages.getString("CommandExecutor.command.timeout", parameter.getTimeout(), //$NON-NLS-1$
+                            Messages.getString(parameter.getTimeoutUnit().name())));
+            manager.expire(process, exception);
+        });
+    }
+
+    private static void notifyExit(final Process process, final CommandStateManager manager) {
+        Throwable expired = manager.getExpired();
+        Throwable outputFailure = manager.getOutputFailure();
+        Throwable inputFailure = manager.getInputFailure();
+        if (expired != null) {
+            manager.notifyCancelled(process.exitValue(), expired);
+        } else if (outputFailure != null) {
+            manager.notifyError(outputFailure);
+        } else if (inputFailure != null) {
+            manager.notifyError(inputFailure);
+        } else {
+            manager.notifyEnded(process.exitValue());
+        }
+    }
+
     protected void setCommand(final ProcessBuilder builder, final CommandParameter parameter) {
+        if (parameter instanceof CommandSpec) {
+            // 確定済みのコマンドラインはProcessBuilder側で変更されないようコピーして渡す
+            builder.command(new ArrayList<>(((CommandSpec) parameter).getCommandLine()));
+            return;
+        }
         List<String> command = new ArrayList<>();
         command.add(parameter.getCommand());
         Collection<String> options = parameter.getOptions();
@@ -87,6 +327,10 @@ public abstract class AbstractCommandExecutor implements CommandExecutor {
     }
 
     protected void setEnvironment(final ProcessBuilder builder, final CommandParameter parameter) {
+        EnvironmentTemplate template = parameter.getEnvironmentTemplate();
+        if (template != null) {
+            template.applyTo(builder.environment());
+        }
         Consumer<Map<String, String>> environment = parameter.getEnvironment();
         if (environment != null) {
             environment.accept(builder.environment());
@@ -94,13 +338,21 @@ public abstract class AbstractCommandExecutor implements CommandExecutor {
     }
 
     protected void setRedirectFile(final ProcessBuilder builder, final CommandParameter parameter) {
+        Path inputFile = parameter.getRedirectInput();
+        if (inputFile != null) {
+            builder.redirectInput(inputFile.toFile());
+        }
         File outputFile = parameter.getRedirectOutput();
         if (outputFile != null) {
-            builder.redirectOutput(outputFile);
+            builder.redirectOutput(redirect(outputFile, parameter.isAppendOutput()));
         }
         File errorFile = parameter.getRedirectError();
         if (errorFile != null) {
-            builder.redirectError(errorFile);
+            builder.redirectError(redirect(errorFile, parameter.isAppendError()));
         }
     }
+
+    private static Redirect redirect(final File file, final boolean append) {
+        return append ? Redirect.appendTo(file) : Redirect.to(file);
+    }
 }
@@ -0,0 +1,139 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jp.ambrosoli.salmon.config.SalmonConfig;
+import jp.ambrosoli.salmon.messages.Messages;
+import jp.ambrosoli.salmon.utils.DaemonThreadFactory;
+
+/**
+ * <p>
+ * 非同期で実行するコマンドを処理する共有の{@link Executor}を管理します。
+ * </p>
+ *
+ * <p>
+ * 各{@link Executor}は最初に使用された時点で生成されます。共有のスレッドプールは{@link SalmonConfig}の設定値から生成されます。
+ * </p>
+ *
+ * <p>
+ * 仮想スレッドはJava 21以降でのみ使用できます。Java 8でもビルドできるよう、仮想スレッドのAPIはリフレクションで呼び出します。
+ * </p>
+ */
+public class AsyncEngine {
+
+    private static final String THREAD_NAME_PREFIX = "salmon-async"; //$NON-NLS-1$
+    private static final String VIRTUAL_THREAD_NAME_PREFIX = "salmon-virtual"; //$NON-NLS-1$
+    private static final String OVERFLOW_THREAD_NAME_PREFIX = "salmon-overflow"; //$NON-NLS-1$
+
+    private static class OverflowHolder {
+        private static final Executor EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new DaemonThreadFactory(OVERFLOW_THREAD_NAME_PREFIX));
+    }
+
+    private static class VirtualHolder {
+        private static final Executor EXECUTOR = VirtualThreadSupport.newExecutor(VIRTUAL_THREAD_NAME_PREFIX);
+    }
+
+    private static volatile Executor shared;
+
+    /**
+     * <p>
+     * salmon.propertiesの設定値に従って、共有のスレッドプールまたは仮想スレッドの{@link Executor}を返します。
+     * </p>
+     *
+     * <p>
+     * {@code async.virtual.thread}が{@code true}でも仮想スレッドが使用できない環境では、共有のスレッドプールを返します。
+     * </p>
+     *
+     * @return 非同期実行に使用する{@link Executor}
+     */
+    public static Executor getDefault() {
+        if (SalmonConfig.isAsyncVirtualThread() && VirtualThreadSupport.isAvailable()) {
+            return virtualThreads();
+        }
+        return platformThreads();
+    }
+
+    /**
+     * <p>
+     * salmon.propertiesの{@code async.pool.*}の設定値で生成される共有のスレッドプールを返します。
+     * </p>
+     *
+     * @return 共有のスレッドプール
+     */
+    public static Executor platformThreads() {
+        Executor executor = shared;
+        if (executor == null) {
+            synchronized (AsyncEngine.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = createThreadPool();
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * <p>
+     * コマンドごとに仮想スレッドを生成する共有の{@link Executor}を返します。
+     * </p>
+     *
+     * @return 仮想スレッドの{@link Executor}
+     * @throws UnsupportedOperationException
+     *             Java 21より前の環境で呼び出された場合
+     */
+    public static Executor virtualThreads() {
+        if (!VirtualThreadSupport.isAvailable()) {
+            throw new UnsupportedOperationException(Messages.getString("AsyncEngine.virtual.thread.unsupported")); //$NON-NLS-1$
+        }
+        return VirtualHolder.EXECUTOR;
+    }
+
+    /**
+     * <p>
+     * 仮想スレッドが使用できるかどうかを返します。
+     * </p>
+     *
+     * @return Java 21以降で実行されている場合{@code true}、その他の場合{@code false}
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return VirtualThreadSupport.isAvailable();
+    }
+
+    /**
+     * <p>
+     * 他の{@link Executor}が実行を拒否した処理を、失わずに実行するための{@link Executor}を返します。
+     * </p>
+     *
+     * <p>
+     * スレッドの数に上限はなく、処理を拒否することはありません。使用されていないスレッドは60秒で終了します。
+     * </p>
+     *
+     * @return 実行を拒否されない{@link Executor}
+     */
+    static Executor overflowThreads() {
+        return OverflowHolder.EXECUTOR;
+    }
+
+    static Executor resolve(final Executor executor) {
+        return executor != null ? executor : getDefault();
+    }
+
+    private static ThreadPoolExecutor createThreadPool() {
+        int coreSize = SalmonConfig.getAsyncPoolCoreSize();
+        int maxSize = Math.max(coreSize, SalmonConfig.getAsyncPoolMaxSize());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreSize, maxSize,
+                SalmonConfig.getAsyncPoolKeepAliveMillis(), TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SalmonConfig.getAsyncPoolQueueCapacity()),
+                new DaemonThreadFactory(THREAD_NAME_PREFIX),
+                SalmonConfig.getAsyncPoolRejectionPolicy().toHandler());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -1,20 +1,30 @@
 package jp.ambrosoli.salmon.command.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 import jp.ambrosoli.salmon.command.CommandBuilder;
 import jp.ambrosoli.salmon.command.CommandExecutorRegistry;
+import jp.ambrosoli.salmon.command.CommandSpec;
 import jp.ambrosoli.salmon.command.CommandState;
 import jp.ambrosoli.salmon.command.CommandState.Status;
+import jp.ambrosoli.salmon.command.EnvironmentTemplate;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.OutputSink;
 import jp.ambrosoli.salmon.event.EventHandler;
 import jp.ambrosoli.salmon.messages.Messages;
 import jp.ambrosoli.salmon.utils.PlatformUtil;
@@ -37,6 +47,16 @@ class CommandBuilderImpl implements CommandBuilder {
         return CommandExecutorRegistry.get().execute(parameter);
     }
 
+    @Override
+    public CompletionStage<CommandState> executeAsync() {
+        return CommandExecutorRegistry.get().executeAsync(parameter);
+    }
+
+    @Override
+    public CommandSpec build() {
+        return new CommandSpecImpl(parameter);
+    }
+
     @Override
     public CommandBuilder options(final Collection<String> options) {
         parameter.setOptions(options);
@@ -54,6 +74,36 @@ class CommandBuilderImpl implements CommandBuilder {
         return this;
     }
 
+    @Override
+    public CommandBuilder onStdoutLine(final EventHandler<CharSequence> handler) {
+        parameter.getStdoutLineHandlers().add(handler);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder onStderrLine(final EventHandler<CharSequence> handler) {
+        parameter.getStderrLineHandlers().add(handler);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder charset(final Charset charset) {
+        parameter.setCharset(charset);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder cache(final CommandResultCache cache) {
+        parameter.setResultCache(cache);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder singleFlight(final boolean singleFlight) {
+        parameter.setSingleFlight(singleFlight);
+        return this;
+    }
+
     @Override
     public CommandBuilder onReady(final EventHandler<CommandState> handler) {
         parameter.setOnStateChanged(Status.READY, handler);
@@ -139,33 +189,127 @@ class CommandBuilderImpl implements CommandBuilder {
         return this;
     }
 
+    @Override
+    public CommandBuilder environment(final EnvironmentTemplate template) {
+        parameter.setEnvironmentTemplate(template);
+        return this;
+    }
+
     @Override
     public CommandBuilder async(final boolean async) {
         parameter.setAsync(async);
         return this;
     }
 
+    @Override
+    public CommandBuilder executor(final Executor executor) {
+        parameter.setExecutor(executor);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder handlerExecutor(final Executor executor) {
+        parameter.setHandlerExecutor(executor);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder stdin(final byte[] input) {
+        byte[] bytes = input.clone();
+        return stdin(() -> new ByteArrayInputStream(bytes));
+    }
+
+    @Override
+    public CommandBuilder stdin(final String input) {
+        // 後から設定した文字セットも反映するよう、エンコードは実行時またはbuild()の時点で行う
+        stdin(() -> {
+            Charset charset = parameter.getCharset() != null ? parameter.getCharset() : Charset.defaultCharset();
+            return new ByteArrayInputStream(input.getBytes(charset));
+        });
+        parameter.setStdinText(input);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder stdin(final Path input) {
+        parameter.setRedirectInput(input);
+        parameter.setStdin(null);
+        parameter.setStdinText(null);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder stdin(final InputStream input) {
+        return stdin(() -> input);
+    }
+
+    private CommandBuilder stdin(final Supplier<? extends InputStream> input) {
+        parameter.setRedirectInput(null);
+        parameter.setStdin(input);
+        parameter.setStdinText(null);
+        return this;
+    }
+
     @Override
     public CommandBuilder redirectStdout(final File redirect) {
         parameter.setRedirectOutput(redirect);
+        parameter.setAppendOutput(false);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder appendStdout(final File redirect) {
+        parameter.setRedirectOutput(redirect);
+        parameter.setAppendOutput(true);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder stdout(final Supplier<? extends OutputSink> sink) {
+        parameter.setStdoutSink(sink);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder stderr(final Supplier<? extends OutputSink> sink) {
+        parameter.setStderrSink(sink);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder pumpBufferSize(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(Messages.getString("CommandBuilder.error.pump.buffer.size", size)); //$NON-NLS-1$
+        }
+        parameter.setPumpBufferSize(size);
         return this;
     }
 
     @Override
     public CommandBuilder redirectStdoutToDevNull() {
         parameter.setRedirectOutput(PlatformUtil.devNull());
+        parameter.setAppendOutput(false);
         return this;
     }
 
     @Override
     public CommandBuilder redirectStderr(final File redirect) {
         parameter.setRedirectError(redirect);
+        parameter.setAppendError(false);
+        return this;
+    }
+
+    @Override
+    public CommandBuilder appendStderr(final File redirect) {
+        parameter.setRedirectError(redirect);
+        parameter.setAppendError(true);
         return this;
     }
 
     @Override
     public CommandBuilder redirectStderrToDevNull() {
         parameter.setRedirectError(PlatformUtil.devNull());
+        parameter.setAppendError(false);
         return this;
     }
 
@@ -3,18 +3,26 @@ package jp.ambrosoli.salmon.command.internal;
 import static jp.ambrosoli.salmon.command.CommandState.*;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 import jp.ambrosoli.salmon.command.CommandParameter;
 import jp.ambrosoli.salmon.command.CommandState;
 import jp.ambrosoli.salmon.command.CommandState.Status;
+import jp.ambrosoli.salmon.command.EnvironmentTemplate;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.OutputSink;
 import jp.ambrosoli.salmon.event.EventHandler;
 
 class CommandParameterImpl implements CommandParameter {
@@ -24,11 +32,27 @@ class CommandParameterImpl implements CommandParameter {
     private long timeout;
     private TimeUnit timeoutUnit;
     private boolean async;
+    private Executor executor;
+    private Executor handlerExecutor;
+    private Path redirectInput;
+    private Supplier<? extends InputStream> stdin;
+    private String stdinText;
     private File redirectOutput;
     private File redirectError;
+    private boolean appendOutput;
+    private boolean appendError;
+    private Supplier<? extends OutputSink> stdoutSink;
+    private Supplier<? extends OutputSink> stderrSink;
+    private int pumpBufferSize;
     private Consumer<Map<String, String>> environment;
+    private EnvironmentTemplate environmentTemplate;
     private Map<Status, List<EventHandler<CommandState>>> handlers = new HashMap<>();
     private List<EventHandler<CommandState>> doneHandlers = new ArrayList<>();
+    private List<EventHandler<CharSequence>> stdoutLineHandlers = new ArrayList<>();
+    private List<EventHandler<CharSequence>> stderrLineHandlers = new ArrayList<>();
+    private Charset charset;
+    private CommandResultCache resultCache;
+    private boolean singleFlight;
     private IntPredicate successCondition = rc -> rc == RC_SUCCESS_DEFAULT;
 
     private Collection<String> options;
@@ -101,6 +125,15 @@ class CommandParameterImpl implements CommandParameter {
         this.environment = environment;
     }
 
+    @Override
+    public EnvironmentTemplate getEnvironmentTemplate() {
+        return environmentTemplate;
+    }
+
+    void setEnvironmentTemplate(final EnvironmentTemplate environmentTemplate) {
+        this.environmentTemplate = environmentTemplate;
+    }
+
     @Override
     public boolean isAsync() {
         return async;
@@ -110,6 +143,50 @@ class CommandParameterImpl implements CommandParameter {
         this.async = async;
     }
 
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    void setHandlerExecutor(final Executor handlerExecutor) {
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    @Override
+    public Path getRedirectInput() {
+        return redirectInput;
+    }
+
+    void setRedirectInput(final Path redirectInput) {
+        this.redirectInput = redirectInput;
+    }
+
+    @Override
+    public Supplier<? extends InputStream> getStdin() {
+        return stdin;
+    }
+
+    void setStdin(final Supplier<? extends InputStream> stdin) {
+        this.stdin = stdin;
+    }
+
+    String getStdinText() {
+        return stdinText;
+    }
+
+    void setStdinText(final String stdinText) {
+        this.stdinText = stdinText;
+    }
+
     @Override
     public File getRedirectOutput() {
         return redirectOutput;
@@ -128,6 +205,88 @@ class CommandParameterImpl implements CommandParameter {
         this.redirectError = redirectError;
     }
 
+    @Override
+    public boolean isAppendOutput() {
+        return appendOutput;
+    }
+
+    void setAppendOutput(final boolean appendOutput) {
+        this.appendOutput = appendOutput;
+    }
+
+    @Override
+    public boolean isAppendError() {
+        return appendError;
+    }
+
+    void setAppendError(final boolean appendError) {
+        this.appendError = appendError;
+    }
+
+    @Override
+    public Supplier<? extends OutputSink> getStdoutSink() {
+        return stdoutSink;
+    }
+
+    void setStdoutSink(final Supplier<? extends OutputSink> stdoutSink) {
+        this.stdoutSink = stdoutSink;
+    }
+
+    @Override
+    public Supplier<? extends OutputSink> getStderrSink() {
+        return stderrSink;
+    }
+
+    void setStderrSink(final Supplier<? extends OutputSink> stderrSink) {
+        this.stderrSink = stderrSink;
+    }
+
+    @Override
+    public int getPumpBufferSize() {
+        return pumpBufferSize;
+    }
+
+    void setPumpBufferSize(final int pumpBufferSize) {
+        this.pumpBufferSize = pumpBufferSize;
+    }
+
+    @Override
+    public List<EventHandler<CharSequence>> getStdoutLineHandlers() {
+        return stdoutLineHandlers;
+    }
+
+    @Override
+    public List<EventHandler<CharSequence>> getStderrLineHandlers() {
+        return stderrLineHandlers;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return charset;
+    }
+
+    void setCharset(final Charset charset) {
+        this.charset = charset;
+    }
+
+    @Override
+    public CommandResultCache getResultCache() {
+        return resultCache;
+    }
+
+    void setResultCache(final CommandResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    @Override
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    void setSingleFlight(final boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
     @Override
     public Map<Status, List<EventHandler<CommandState>>> getHandlers() {
         return handlers;
@@ -0,0 +1,274 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import jp.ambrosoli.salmon.command.CommandExecutorRegistry;
+import jp.ambrosoli.salmon.command.CommandParameter;
+import jp.ambrosoli.salmon.command.CommandSpec;
+import jp.ambrosoli.salmon.command.CommandState;
+import jp.ambrosoli.salmon.command.CommandState.Status;
+import jp.ambrosoli.salmon.command.EnvironmentTemplate;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.OutputSink;
+import jp.ambrosoli.salmon.event.EventHandler;
+
+/**
+ * <p>
+ * {@link CommandParameter}の内容を生成時に複製した不変の{@link CommandSpec}です。
+ * </p>
+ */
+final class CommandSpecImpl implements CommandSpec {
+
+    private final String command;
+    private final List<String> options;
+    private final List<String> commandLine;
+    private final Map<Status, List<EventHandler<CommandState>>> handlers;
+    private final List<EventHandler<CommandState>> doneHandlers;
+    private final IntPredicate successCondition;
+    private final long timeout;
+    private final TimeUnit timeoutUnit;
+    private final File directory;
+    private final Consumer<Map<String, String>> environment;
+    private final EnvironmentTemplate environmentTemplate;
+    private final boolean async;
+    private final Executor executor;
+    private final Executor handlerExecutor;
+    private final Path redirectInput;
+    private final Supplier<? extends InputStream> stdin;
+    private final File redirectOutput;
+    private final File redirectError;
+    private final boolean appendOutput;
+    private final boolean appendError;
+    private final Supplier<? extends OutputSink> stdoutSink;
+    private final Supplier<? extends OutputSink> stderrSink;
+    private final int pumpBufferSize;
+    private final List<EventHandler<CharSequence>> stdoutLineHandlers;
+    private final List<EventHandler<CharSequence>> stderrLineHandlers;
+    private final Charset charset;
+    private final CommandResultCache resultCache;
+    private final boolean singleFlight;
+
+    CommandSpecImpl(final CommandParameterImpl parameter) {
+        command = parameter.getCommand();
+        Collection<String> source = parameter.getOptions();
+        options = source != null ? freeze(source) : null;
+        List<String> line = new ArrayList<>(1 + (options != null ? options.size() : 0));
+        line.add(command);
+        if (options != null) {
+            line.addAll(options);
+        }
+        commandLine = freeze(line);
+        Map<Status, List<EventHandler<CommandState>>> handlerMap = new EnumMap<>(Status.class);
+        parameter.getHandlers().forEach((status, list) -> handlerMap.put(status, freeze(list)));
+        handlers = Collections.unmodifiableMap(handlerMap);
+        doneHandlers = freeze(parameter.getDoneHandlers());
+        successCondition = parameter.getSuccessCondition();
+        timeout = parameter.getTimeout();
+        timeoutUnit = parameter.getTimeoutUnit();
+        directory = parameter.getDirectory();
+        environment = parameter.getEnvironment();
+        environmentTemplate = parameter.getEnvironmentTemplate();
+        async = parameter.isAsync();
+        executor = parameter.getExecutor();
+        handlerExecutor = parameter.getHandlerExecutor();
+        redirectInput = parameter.getRedirectInput();
+        redirectOutput = parameter.getRedirectOutput();
+        redirectError = parameter.getRedirectError();
+        appendOutput = parameter.isAppendOutput();
+        appendError = parameter.isAppendError();
+        stdoutSink = parameter.getStdoutSink();
+        stderrSink = parameter.getStderrSink();
+        pumpBufferSize = parameter.getPumpBufferSize();
+        stdoutLineHandlers = freeze(parameter.getStdoutLineHandlers());
+        stderrLineHandlers = freeze(parameter.getStderrLineHandlers());
+        charset = parameter.getCharset();
+        stdin = freezeStdin(parameter, charset);
+        resultCache = parameter.getResultCache();
+        singleFlight = parameter.isSingleFlight();
+    }
+
+    private static Supplier<? extends InputStream> freezeStdin(final CommandParameterImpl parameter,
+            final Charset charset) {
+        String text = parameter.getStdinText();
+        if (text == null) {
+            return parameter.getStdin();
+        }
+        // 実行のたびにエンコードせず、生成時の文字セットでエンコードした入力を共有する
+        byte[] bytes = text.getBytes(charset != null ? charset : Charset.defaultCharset());
+        return () -> new ByteArrayInputStream(bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> freeze(final Collection<? extends T> source) {
+        // 実行のたびにイテレータ以外を生成しないよう、配列に展開して保持する
+        return Collections.unmodifiableList(Arrays.asList((T[]) source.toArray()));
+    }
+
+    @Override
+    public CommandState execute() throws IOException, InterruptedException {
+        return CommandExecutorRegistry.get().execute(this);
+    }
+
+    @Override
+    public CompletionStage<CommandState> executeAsync() {
+        return CommandExecutorRegistry.get().executeAsync(this);
+    }
+
+    @Override
+    public List<String> getCommandLine() {
+        return commandLine;
+    }
+
+    @Override
+    public String getCommand() {
+        return command;
+    }
+
+    @Override
+    public Collection<String> getOptions() {
+        return options;
+    }
+
+    @Override
+    public Map<Status, List<EventHandler<CommandState>>> getHandlers() {
+        return handlers;
+    }
+
+    @Override
+    public List<EventHandler<CommandState>> getDoneHandlers() {
+        return doneHandlers;
+    }
+
+    @Override
+    public IntPredicate getSuccessCondition() {
+        return successCondition;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public TimeUnit getTimeoutUnit() {
+        return timeoutUnit;
+    }
+
+    @Override
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public Consumer<Map<String, String>> getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public EnvironmentTemplate getEnvironmentTemplate() {
+        return environmentTemplate;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return async;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public Executor getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    @Override
+    public Path getRedirectInput() {
+        return redirectInput;
+    }
+
+    @Override
+    public Supplier<? extends InputStream> getStdin() {
+        return stdin;
+    }
+
+    @Override
+    public File getRedirectOutput() {
+        return redirectOutput;
+    }
+
+    @Override
+    public File getRedirectError() {
+        return redirectError;
+    }
+
+    @Override
+    public boolean isAppendOutput() {
+        return appendOutput;
+    }
+
+    @Override
+    public boolean isAppendError() {
+        return appendError;
+    }
+
+    @Override
+    public Supplier<? extends OutputSink> getStdoutSink() {
+        return stdoutSink;
+    }
+
+    @Override
+    public Supplier<? extends OutputSink> getStderrSink() {
+        return stderrSink;
+    }
+
+    @Override
+    public int getPumpBufferSize() {
+        return pumpBufferSize;
+    }
+
+    @Override
+    public List<EventHandler<CharSequence>> getStdoutLineHandlers() {
+        return stdoutLineHandlers;
+    }
+
+    @Override
+    public List<EventHandler<CharSequence>> getStderrLineHandlers() {
+        return stderrLineHandlers;
+    }
+
+    @Override
+    public Charset getCharset() {
+        return charset;
+    }
+
+    @Override
+    public CommandResultCache getResultCache() {
+        return resultCache;
+    }
+
+    @Override
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+}
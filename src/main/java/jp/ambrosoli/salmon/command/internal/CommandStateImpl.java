@@ -1,33 +1,42 @@
 package jp.ambrosoli.salmon.command.internal;
 
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 import jp.ambrosoli.salmon.command.CommandState;
+import jp.ambrosoli.salmon.command.io.CapturedOutput;
 import jp.ambrosoli.salmon.event.Observer;
 
+/**
+ * <p>
+ * {@link CommandState}の実装クラスです。
+ * </p>
+ *
+ * <p>
+ * ステータス、終了コード、例外は不変の{@link Snapshot}として{@link AtomicReference}で保持し、{@link #transition(Status, Integer, Throwable)}
+ * でまとめて更新します。更新はロックを取得せずにCASで行い、終了したコマンドのステータスは最初に終了させた1回以外は変更されません。
+ * 出力は{@link Status#RUNNING}に遷移する前に一度だけ設定されます。
+ * </p>
+ */
 class CommandStateImpl implements CommandState {
 
-    private Integer exitCode;
-    private InputStream stdout;
-    private InputStream stderr;
-    private Throwable thrown;
-    private Status status;
-    private List<Observer> observers = new ArrayList<>();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.INITIAL);
+    private volatile InputStream stdout;
+    private volatile InputStream stderr;
+    private volatile CapturedOutput capturedStdout;
+    private volatile CapturedOutput capturedStderr;
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
 
     @Override
     public Integer getExitCode() {
-        return exitCode;
-    }
-
-    void setExitCode(final Integer exitCode) {
-        this.exitCode = exitCode;
+        return snapshot.get().exitCode;
     }
 
     @Override
     public InputStream getStdout() {
-        return stdout;
+        return capturedStdout != null ? capturedStdout.openStream() : stdout;
     }
 
     void setStdout(final InputStream stdout) {
@@ -36,7 +45,7 @@ class CommandStateImpl implements CommandState {
 
     @Override
     public InputStream getStderr() {
-        return stderr;
+        return capturedStderr != null ? capturedStderr.openStream() : stderr;
     }
 
     void setStderr(final InputStream stderr) {
@@ -44,22 +53,61 @@ class CommandStateImpl implements CommandState {
     }
 
     @Override
-    public Throwable getThrown() {
-        return thrown;
+    public CapturedOutput getCapturedStdout() {
+        return capturedStdout;
     }
 
-    void setThrown(final Throwable thrown) {
-        this.thrown = thrown;
+    void setCapturedStdout(final CapturedOutput capturedStdout) {
+        this.capturedStdout = capturedStdout;
     }
 
     @Override
-    public Status getStatus() {
-        return status;
+    public CapturedOutput getCapturedStderr() {
+        return capturedStderr;
     }
 
-    void setStatus(final Status status) {
-        this.status = status;
+    void setCapturedStderr(final CapturedOutput capturedStderr) {
+        this.capturedStderr = capturedStderr;
+    }
+
+    @Override
+    public Throwable getThrown() {
+        return snapshot.get().thrown;
+    }
+
+    @Override
+    public Status getStatus() {
+        return snapshot.get().status;
+    }
+
+    /**
+     * <p>
+     * ステータスを遷移させ、{@link Observer}に通知します。
+     * </p>
+     *
+     * <p>
+     * すでに終了している場合は遷移させず、通知もしません。
+     * </p>
+     *
+     * @param status
+     *            遷移後のステータス
+     * @param exitCode
+     *            終了コード
+     * @param thrown
+     *            発生した例外
+     * @return 遷移させた場合{@code true}、すでに終了していた場合{@code false}
+     */
+    boolean transition(final Status status, final Integer exitCode, final Throwable thrown) {
+        Snapshot next = new Snapshot(status, exitCode, thrown);
+        Snapshot current;
+        do {
+            current = snapshot.get();
+            if (current.isFinished()) {
+                return false;
+            }
+        } while (!snapshot.compareAndSet(current, next));
         notifyObservers();
+        return true;
     }
 
     @Override
@@ -92,6 +140,16 @@ class CommandStateImpl implements CommandState {
         return getStatus() == Status.CANCELLED;
     }
 
+    @Override
+    public void close() {
+        if (capturedStdout != null) {
+            capturedStdout.release();
+        }
+        if (capturedStderr != null) {
+            capturedStderr.release();
+        }
+    }
+
     @Override
     public void addObserver(final Observer observer) {
         observers.add(observer);
@@ -102,4 +160,23 @@ class CommandStateImpl implements CommandState {
             observer.update(this);
         }
     }
+
+    private static final class Snapshot {
+
+        private static final Snapshot INITIAL = new Snapshot(null, null, null);
+
+        private final Status status;
+        private final Integer exitCode;
+        private final Throwable thrown;
+
+        Snapshot(final Status status, final Integer exitCode, final Throwable thrown) {
+            this.status = status;
+            this.exitCode = exitCode;
+            this.thrown = thrown;
+        }
+
+        boolean isFinished() {
+            return status != null && status != Status.READY && status != Status.RUNNING;
+        }
+    }
 }
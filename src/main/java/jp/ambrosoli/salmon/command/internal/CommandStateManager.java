@@ -1,72 +1,544 @@
 package jp.ambrosoli.salmon.command.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import jp.ambrosoli.salmon.command.CommandParameter;
 import jp.ambrosoli.salmon.command.CommandState;
 import jp.ambrosoli.salmon.command.CommandState.Status;
+import jp.ambrosoli.salmon.command.cache.CachedResult;
+import jp.ambrosoli.salmon.command.cache.CommandKey;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.CapturedOutput;
+import jp.ambrosoli.salmon.command.io.OutputSink;
+import jp.ambrosoli.salmon.command.io.OutputSinks;
+import jp.ambrosoli.salmon.config.SalmonConfig;
+import jp.ambrosoli.salmon.event.EventDispatcher;
 import jp.ambrosoli.salmon.event.EventHandler;
 import jp.ambrosoli.salmon.event.EventHandlerHelper;
-import jp.ambrosoli.salmon.event.Observable;
-import jp.ambrosoli.salmon.event.Observer;
+import jp.ambrosoli.salmon.event.EventHandlingException;
 
-public class CommandStateManager implements Observer {
+public class CommandStateManager {
+
+    private static final ConcurrentMap<FlightKey, CompletableFuture<FlightResult>> IN_FLIGHT = new ConcurrentHashMap<>();
 
     private final CommandParameter parameter;
     private final CommandStateImpl state;
-    private boolean handled;
+    private final CompletableFuture<CommandState> completion = new CompletableFuture<>();
+    private volatile EventHandlingException handlerFailure;
+    private volatile Throwable expired;
+    private volatile Throwable outputFailure;
+    private volatile Throwable inputFailure;
+    private CompletableFuture<Void> drained = CompletableFuture.completedFuture(null);
+    private final List<StreamPump> pumps = new ArrayList<>(2);
+    private final CommandResultCache cache;
+    private final CommandKey key;
+    private final EventDispatcher dispatcher;
+    private boolean replayed;
+    private FlightKey flightKey;
+    private CompletableFuture<FlightResult> flight;
+    private CompletableFuture<FlightResult> leader;
 
-    CommandStateManager(final CommandParameter parameter) {
+    /**
+     * <p>
+     * コマンドの状態の管理を開始します。
+     * </p>
+     *
+     * <p>
+     * キャッシュのキーは{@code builder}に適用済みの環境変数から生成するため、環境変数をもう一度コピーすることはありません。
+     * </p>
+     */
+    CommandStateManager(final CommandParameter parameter, final ProcessBuilder builder) {
         this.parameter = parameter;
+        if ((parameter.getResultCache() != null || parameter.isSingleFlight()) && CommandKey.isCacheable(parameter)) {
+            cache = parameter.getResultCache();
+            // 環境変数を設定していない場合にenvironment()で環境変数をコピーしないよう、設定している場合のみ参照する
+            key = CommandKey.of(parameter, parameter.getEnvironment() != null ? builder.environment() : null);
+        } else {
+            cache = null;
+            key = null;
+        }
+        dispatcher = parameter.getHandlerExecutor() != null ? new EventDispatcher(parameter.getHandlerExecutor())
+                : null;
         state = new CommandStateImpl();
-        state.addObserver(this);
-        state.setStatus(Status.READY);
+        transition(Status.READY, null, null);
     }
 
     CommandState getState() {
         return state;
     }
 
-    boolean isHandled() {
-        return handled;
+    CompletionStage<CommandState> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * <p>
+     * キャッシュに実行結果がある場合は、プロセスを起動せずにその実行結果でコマンドを終了させます。
+     * </p>
+     *
+     * <p>
+     * ステータスは実際に実行した場合と同じく{@link Status#RUNNING}を経由して遷移し、1行ごとのイベントハンドラも呼び出されます。
+     * 実行結果を返した場合は{@link #notifyFinished()}まで呼び出し済みです。
+     * </p>
+     *
+     * @return キャッシュの実行結果を返した場合{@code true}、その他の場合{@code false}
+     */
+    boolean replayCachedResult() {
+        CachedResult result = cache != null ? cache.get(key) : null;
+        if (result == null) {
+            return false;
+        }
+        replay(result.getStdout(), result.getStderr(), () -> notifyEnded(result.getExitCode()));
+        return true;
+    }
+
+    /**
+     * <p>
+     * 同じ{@link CommandKey}のコマンドが実行中かどうかを確認します。
+     * </p>
+     *
+     * <p>
+     * 実行中のコマンドのタイムアウトで待っているコマンドも終了するため、タイムアウトの設定が異なるコマンドは同じコマンドとして扱いません。
+     * </p>
+     *
+     * <p>
+     * 実行中のコマンドがある場合は、{@link #awaitInFlight()}または{@link #whenInFlightDone(Runnable)}で終了を待ってから
+     * {@link #replayInFlightResult()}を呼び出してください。実行中のコマンドがない場合は、このコマンドを実行中として登録します。
+     * 登録したコマンドは{@link #notifyFinished()}で登録を解除し、待っているコマンドに実行結果を渡します。
+     * </p>
+     *
+     * @return 同じコマンドが実行中の場合{@code true}、その他の場合{@code false}
+     */
+    boolean joinInFlight() {
+        if (key == null || !parameter.isSingleFlight()) {
+            return false;
+        }
+        CompletableFuture<FlightResult> own = new CompletableFuture<>();
+        flightKey = new FlightKey(key, parameter);
+        leader = IN_FLIGHT.putIfAbsent(flightKey, own);
+        if (leader == null) {
+            flight = own;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * 実行中のコマンドが終了するのを待ちます。
+     * </p>
+     *
+     * @throws InterruptedException
+     *             待機中に割り込まれた場合
+     */
+    void awaitInFlight() throws InterruptedException {
+        try {
+            leader.get();
+        } catch (ExecutionException e) {
+            // 登録したコマンドは常に実行結果で完了させるため発生しない
+        }
+    }
+
+    /**
+     * <p>
+     * 実行中のコマンドが終了した時点で{@code action}を実行します。
+     * </p>
+     *
+     * @param action
+     *            実行する処理
+     */
+    void whenInFlightDone(final Runnable action) {
+        leader.whenComplete((result, thrown) -> action.run());
+    }
+
+    /**
+     * <p>
+     * 実行中だったコマンドの実行結果でコマンドを終了させます。
+     * </p>
+     *
+     * <p>
+     * ステータスの遷移とイベントハンドラの呼び出しは{@link #replayCachedResult()}と同じように行われます。
+     * 実行中だったコマンドがプロセスを起動できなかった場合は、{@link Status#RUNNING}を経由せずにエラーとして終了します。
+     * </p>
+     */
+    void replayInFlightResult() {
+        FlightResult result = leader.getNow(null);
+        if (result.stdout == null || result.stderr == null) {
+            try {
+                notifyError(result.thrown);
+            } finally {
+                notifyFinished();
+            }
+            return;
+        }
+        replay(result.stdout, result.stderr, () -> {
+            if (result.status == Status.SUCCEEDED || result.status == Status.FAILED) {
+                notifyEnded(result.exitCode);
+            } else if (result.status == Status.CANCELLED) {
+                notifyCancelled(result.exitCode, result.thrown);
+            } else {
+                notifyError(result.thrown);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * 出力を再生してからコマンドを終了させます。
+     * </p>
+     *
+     * <p>
+     * ステータスは実際に実行した場合と同じく{@link Status#RUNNING}を経由して遷移し、1行ごとのイベントハンドラも呼び出されます。
+     * 再生したコマンドの実行結果はキャッシュしません。
+     * </p>
+     */
+    private void replay(final byte[] stdoutBytes, final byte[] stderrBytes, final Runnable ending) {
+        replayed = true;
+        try {
+            OutputSink stdout = OutputSinks.capture();
+            OutputSink stderr = OutputSinks.capture();
+            state.setCapturedStdout((CapturedOutput) stdout);
+            state.setCapturedStderr((CapturedOutput) stderr);
+            transition(Status.RUNNING, null, null);
+            replay(stdout, stdoutBytes, parameter.getStdoutLineHandlers());
+            replay(stderr, stderrBytes, parameter.getStderrLineHandlers());
+            ending.run();
+        } catch (EventHandlingException e) {
+            // この例外が発生した場合はすでにイベント処理が実行済みのため、そのまま例外をスローする
+            throw e;
+        } catch (Throwable thrown) {
+            notifyError(thrown);
+        } finally {
+            notifyFinished();
+        }
+    }
+
+    private void replay(final OutputSink captured, final byte[] output,
+            final List<EventHandler<CharSequence>> lineHandlers) throws IOException {
+        try (OutputSink sink = withLineHandlers(captured, lineHandlers)) {
+            sink.write(ByteBuffer.wrap(output));
+        }
     }
 
     Process startProcess(final ProcessBuilder builder) throws IOException {
         Process process = builder.start();
-        state.setStdout(process.getInputStream());
-        state.setStderr(process.getErrorStream());
-        state.setStatus(Status.RUNNING);
+        int bufferSize = parameter.getPumpBufferSize() > 0 ? parameter.getPumpBufferSize()
+                : SalmonConfig.getPumpBufferSize();
+        CompletableFuture<Void> stdout = pump(process, builder.redirectOutput(), process.getInputStream(),
+                parameter.getStdoutSink(), parameter.getStdoutLineHandlers(), bufferSize, state::setStdout,
+                state::setCapturedStdout);
+        CompletableFuture<Void> stderr = pump(process, builder.redirectError(), process.getErrorStream(),
+                parameter.getStderrSink(), parameter.getStderrLineHandlers(), bufferSize, state::setStderr,
+                state::setCapturedStderr);
+        drained = CompletableFuture.allOf(stdout, stderr);
+        Supplier<? extends InputStream> stdin = parameter.getStdin();
+        if (stdin != null && builder.redirectInput() == Redirect.PIPE) {
+            StdinWriter.start(process, stdin.get(), bufferSize, thrown -> failInput(process, thrown));
+        }
+        transition(Status.RUNNING, null, null);
         return process;
     }
 
-    synchronized void notifyEnded(final Integer exitCode) {
-        if (isHandled()) {
+    private CompletableFuture<Void> pump(final Process process, final Redirect redirect, final InputStream stream,
+            final Supplier<? extends OutputSink> supplier, final List<EventHandler<CharSequence>> lineHandlers,
+            final int bufferSize, final Consumer<InputStream> streamSetter,
+            final Consumer<CapturedOutput> captureSetter) {
+        if (redirect != Redirect.PIPE) {
+            // ファイルにリダイレクトしている場合は読み取る出力がない
+            streamSetter.accept(stream);
+            return CompletableFuture.completedFuture(null);
+        }
+        OutputSink sink = supplier != null ? supplier.get() : OutputSinks.capture();
+        if (sink instanceof CapturedOutput) {
+            captureSetter.accept((CapturedOutput) sink);
+        } else {
+            streamSetter.accept(new ByteArrayInputStream(new byte[0]));
+        }
+        StreamPump pump = StreamPump.start(process, stream, withLineHandlers(sink, lineHandlers), bufferSize);
+        pumps.add(pump);
+        return pump.getCompletion();
+    }
+
+    private OutputSink withLineHandlers(final OutputSink sink, final List<EventHandler<CharSequence>> lineHandlers) {
+        if (lineHandlers == null || lineHandlers.isEmpty()) {
+            return sink;
+        }
+        Charset charset = parameter.getCharset() != null ? parameter.getCharset() : Charset.defaultCharset();
+        return OutputSinks.tee(sink,
+                OutputSinks.lines(charset, line -> EventHandlerHelper.fireEvent(lineHandlers, line)));
+    }
+
+    /**
+     * <p>
+     * 標準出力と標準エラー出力を終端まで読み取るのを待ちます。
+     * </p>
+     *
+     * <p>
+     * プロセスの終了後に呼び出してください。バックグラウンドで起動された子孫プロセスが出力を引き継いでいる場合は、
+     * salmon.propertiesの{@code pump.drain.timeout}の値(ミリ秒)だけ待ってから、それまでの出力で書き込み先を閉じます。
+     * </p>
+     *
+     * @throws InterruptedException
+     *             待機中に割り込まれた場合
+     */
+    void awaitOutput() throws InterruptedException {
+        try {
+            try {
+                drained.get(SalmonConfig.getPumpDrainTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                detachOutput();
+                drained.get();
+            }
+        } catch (ExecutionException e) {
+            outputFailure = e.getCause();
+        }
+    }
+
+    /**
+     * <p>
+     * 標準出力と標準エラー出力を終端まで読み取った時点で{@code action}を実行します。
+     * </p>
+     *
+     * <p>
+     * プロセスの終了後に呼び出してください。終端に達しない場合は{@link #awaitOutput()}と同じく、
+     * {@code pump.drain.timeout}の経過後にそれまでの出力で書き込み先を閉じてから{@code action}を実行します。
+     * </p>
+     *
+     * @param action
+     *            実行する処理
+     */
+    void whenOutputDrained(final Runnable action) {
+        if (!drained.isDone()) {
+            TimeoutWheel.Timeout timeout = TimeoutWheel.getInstance()
+                    .schedule(SalmonConfig.getPumpDrainTimeoutMillis(), TimeUnit.MILLISECONDS, this::detachOutput);
+            drained.whenComplete((result, thrown) -> timeout.cancel());
+        }
+        drained.whenComplete((result, thrown) -> {
+            if (thrown != null) {
+                outputFailure = thrown instanceof CompletionException ? thrown.getCause() : thrown;
+            }
+            action.run();
+        });
+    }
+
+    private void detachOutput() {
+        for (StreamPump pump : pumps) {
+            pump.detach();
+        }
+    }
+
+    private void abortOutput(final Throwable thrown) {
+        for (StreamPump pump : pumps) {
+            pump.abort(thrown);
+        }
+    }
+
+    Throwable getOutputFailure() {
+        return outputFailure;
+    }
+
+    /**
+     * <p>
+     * タイムアウトによりプロセスを強制終了します。
+     * </p>
+     *
+     * <p>
+     * 出力の書き込み先は{@link OutputSink#close()}の代わりに{@link OutputSink#abort(Throwable)}で閉じられます。
+     * </p>
+     *
+     * <p>
+     * ステータスの更新は行いません。プロセスの終了後に{@link #getExpired()}を確認して{@link #notifyCancelled(Integer, Throwable)}
+     * を呼び出してください。
+     * </p>
+     *
+     * @param process
+     *            プロセス
+     * @param thrown
+     *            タイムアウトを表す例外
+     */
+    void expire(final Process process, final Throwable thrown) {
+        if (process.isAlive()) {
+            expired = thrown;
+            abortOutput(thrown);
+            process.destroyForcibly();
+        }
+    }
+
+    Throwable getExpired() {
+        return expired;
+    }
+
+    /**
+     * <p>
+     * 標準入力に書き込む入力の読み取りに失敗したため、プロセスを強制終了します。
+     * </p>
+     *
+     * <p>
+     * {@link #expire(Process, Throwable)}と同じく、出力の書き込み先は{@link OutputSink#abort(Throwable)}で閉じられます。
+     * </p>
+     *
+     * <p>
+     * 途中までの入力で処理が続かないよう、プロセスは終了させます。ステータスの更新は行いません。
+     * プロセスの終了後に{@link #getInputFailure()}を確認して{@link #notifyError(Throwable)}を呼び出してください。
+     * </p>
+     *
+     * @param process
+     *            プロセス
+     * @param thrown
+     *            入力の読み取りで発生した例外
+     */
+    void failInput(final Process process, final Throwable thrown) {
+        if (process.isAlive()) {
+            inputFailure = thrown;
+            abortOutput(thrown);
+            process.destroyForcibly();
+        }
+    }
+
+    Throwable getInputFailure() {
+        return inputFailure;
+    }
+
+    void notifyEnded(final Integer exitCode) {
+        Status status = judgeStatus(exitCode);
+        if (state.transition(status, exitCode, null)) {
+            storeResult(exitCode);
+            fireStatusEvent(status);
+        }
+    }
+
+    void notifyError(final Throwable thrown) {
+        transition(Status.ERROR, null, thrown);
+    }
+
+    void notifyCancelled(final Integer exitCode, final Throwable thrown) {
+        transition(Status.CANCELLED, exitCode, thrown);
+    }
+
+    /**
+     * <p>
+     * 終了時のイベントハンドラを呼び出し、{@link #getCompletion()}を完了させます。
+     * </p>
+     *
+     * <p>
+     * イベントハンドラを実行する{@link java.util.concurrent.Executor}が設定されている場合は、先に受け付けたステータスの
+     * イベントハンドラの後に実行するよう登録して返却します。{@link #getCompletion()}はイベントハンドラの実行後に完了します。
+     * </p>
+     */
+    void notifyFinished() {
+        leaveInFlight();
+        if (dispatcher != null) {
+            dispatcher.execute(() -> {
+                try {
+                    fireEvent(parameter.getDoneHandlers());
+                } finally {
+                    complete();
+                }
+            });
             return;
         }
-        state.setExitCode(exitCode);
-        state.setStatus(judgeStatus(exitCode));
+        try {
+            EventHandlerHelper.fireEvent(parameter.getDoneHandlers(), state);
+        } catch (EventHandlingException e) {
+            handlerFailure = e;
+            throw e;
+        } finally {
+            complete();
+        }
+    }
+
+    private void complete() {
+        if (handlerFailure != null) {
+            completion.completeExceptionally(handlerFailure);
+        } else {
+            completion.complete(state);
+        }
     }
 
-    synchronized void notifyError(final Throwable thrown) {
-        if (isHandled()) {
+    /**
+     * <p>
+     * ステータスを遷移させ、遷移後のステータスのイベントハンドラを呼び出します。
+     * </p>
+     *
+     * <p>
+     * 遷移はロックを取得せずに行うため、イベントハンドラの実行中でもタイムアウトやプロセスの終了による遷移は妨げられません。
+     * 終了の遷移が競合した場合は最初の1回だけが反映され、イベントハンドラもその1回分だけ呼び出されます。
+     * </p>
+     */
+    private void transition(final Status status, final Integer exitCode, final Throwable thrown) {
+        if (state.transition(status, exitCode, thrown)) {
+            fireStatusEvent(status);
+        }
+    }
+
+    private void fireStatusEvent(final Status status) {
+        List<EventHandler<CommandState>> handlers = parameter.getHandlers().get(status);
+        if (handlers == null) {
+            return;
+        }
+        if (dispatcher != null) {
+            dispatcher.execute(() -> fireEvent(handlers));
             return;
         }
-        state.setThrown(thrown);
-        state.setStatus(Status.ERROR);
+        try {
+            EventHandlerHelper.fireEvent(handlers, state);
+        } catch (EventHandlingException e) {
+            handlerFailure = e;
+            throw e;
+        }
     }
 
-    synchronized void notifyCancelled(final Integer exitCode, final Throwable thrown) {
-        if (isHandled()) {
+    /**
+     * <p>
+     * {@link EventDispatcher}からイベントハンドラを呼び出します。
+     * </p>
+     *
+     * <p>
+     * 例外をスローしても呼び出し元には届かないため、{@link #getCompletion()}に反映するよう保持します。
+     * </p>
+     */
+    private void fireEvent(final List<EventHandler<CommandState>> handlers) {
+        try {
+            EventHandlerHelper.fireEvent(handlers, state);
+        } catch (EventHandlingException e) {
+            handlerFailure = e;
+        }
+    }
+
+    private void storeResult(final Integer exitCode) {
+        CapturedOutput stdout = state.getCapturedStdout();
+        CapturedOutput stderr = state.getCapturedStderr();
+        if (cache == null || replayed || exitCode == null || stdout == null || stderr == null) {
             return;
         }
-        state.setExitCode(exitCode);
-        state.setThrown(thrown);
-        state.setStatus(Status.CANCELLED);
+        cache.put(key, new CachedResult(exitCode, stdout.toByteArray(), stderr.toByteArray()));
     }
 
-    synchronized void notifyFinished() {
-        EventHandlerHelper.fireEvent(parameter.getDoneHandlers(), state);
+    private void leaveInFlight() {
+        if (flight == null) {
+            return;
+        }
+        // 終了したコマンドに新たに待つコマンドが加わらないよう、実行結果を渡す前に登録を解除する
+        IN_FLIGHT.remove(flightKey, flight);
+        flight.complete(new FlightResult(state));
+        flight = null;
     }
 
     private Status judgeStatus(final Integer exitCode) {
@@ -79,13 +551,61 @@ public class CommandStateManager implements Observer {
         return status;
     }
 
-    @Override
-    public void update(final Observable observable) {
-        CommandState state = (CommandState) observable;
-        List<EventHandler<CommandState>> handlers = parameter.getHandlers().get(state.getStatus());
-        if (handlers != null) {
-            EventHandlerHelper.fireEvent(handlers, state);
+    /**
+     * <p>
+     * 実行中のコマンドを識別するキーです。{@link CommandKey}にタイムアウトの設定を加えたものです。
+     * </p>
+     */
+    private static final class FlightKey {
+
+        private final CommandKey key;
+        private final long timeoutNanos;
+
+        FlightKey(final CommandKey key, final CommandParameter parameter) {
+            this.key = key;
+            timeoutNanos = parameter.getTimeoutUnit() != null
+                    ? Math.max(0L, parameter.getTimeoutUnit().toNanos(parameter.getTimeout()))
+                    : -1L;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + Long.hashCode(timeoutNanos);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey other = (FlightKey) obj;
+            return timeoutNanos == other.timeoutNanos && key.equals(other.key);
         }
     }
 
+    /**
+     * <p>
+     * 実行中だったコマンドの実行結果です。
+     * </p>
+     *
+     * <p>
+     * 実行したコマンドの{@link CommandState}は呼び出し元で閉じられる可能性があるため、出力はコピーして保持します。
+     * </p>
+     */
+    private static class FlightResult {
+
+        private final Status status;
+        private final Integer exitCode;
+        private final Throwable thrown;
+        private final byte[] stdout;
+        private final byte[] stderr;
+
+        FlightResult(final CommandState state) {
+            status = state.getStatus();
+            exitCode = state.getExitCode();
+            thrown = state.getThrown();
+            stdout = state.getCapturedStdout() != null ? state.getCapturedStdout().toByteArray() : null;
+            stderr = state.getCapturedStderr() != null ? state.getCapturedStderr().toByteArray() : null;
+        }
+    }
 }
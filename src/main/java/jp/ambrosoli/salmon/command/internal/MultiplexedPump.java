@@ -0,0 +1,129 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import jp.ambrosoli.salmon.config.SalmonConfig;
+
+/**
+ * <p>
+ * 多数のプロセスの出力を固定数のスレッドで読み取ります。
+ * </p>
+ *
+ * <p>
+ * 各スレッドは担当する出力を{@link java.io.InputStream#available()}でポーリングし、ブロックせずに読み取れる分だけを読み取ります。
+ * 読み取れる出力がなかった場合はポーリング間隔を{@code pump.poll.interval}の値(ミリ秒)まで倍々に延ばします。
+ * スレッドの数は{@code pump.threads}で設定します。
+ * プロセスの終了後に読み取れる出力がなくなった時点で、終端までの読み取りは専用のスレッドに引き継ぐため、
+ * 子孫プロセスが出力を引き継いでいても、これらのスレッドがブロックすることはありません。
+ * </p>
+ *
+ * <p>
+ * {@link jp.ambrosoli.salmon.command.io.OutputSink}への書き込みは読み取りと同じスレッドで行われるため、
+ * 書き込みに時間がかかると同じスレッドが担当する他のプロセスの読み取りが遅れます。
+ * </p>
+ */
+final class MultiplexedPump {
+
+    private static final String THREAD_NAME_PREFIX = "salmon-pump-mux-"; //$NON-NLS-1$
+    private static final long MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private static class Holder {
+        private static final MultiplexedPump INSTANCE = new MultiplexedPump(SalmonConfig.getPumpThreads(),
+                TimeUnit.MILLISECONDS.toNanos(SalmonConfig.getPumpPollIntervalMillis()));
+    }
+
+    private final Worker[] workers;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private MultiplexedPump(final int threads, final long maxIntervalNanos) {
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(Math.max(MIN_INTERVAL_NANOS, maxIntervalNanos));
+            Thread thread = new Thread(workers[i], THREAD_NAME_PREFIX + (i + 1));
+            thread.setDaemon(true);
+            workers[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    static MultiplexedPump getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    void register(final StreamPump pump) {
+        Worker worker = workers[Math.floorMod(next.getAndIncrement(), workers.length)];
+        worker.pending.add(pump);
+        LockSupport.unpark(worker.thread);
+    }
+
+    private static class Worker implements Runnable {
+
+        private final Queue<StreamPump> pending = new ConcurrentLinkedQueue<>();
+        private final List<StreamPump> pumps = new ArrayList<>();
+        private final long maxIntervalNanos;
+        private Thread thread;
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+        Worker(final long maxIntervalNanos) {
+            this.maxIntervalNanos = maxIntervalNanos;
+        }
+
+        @Override
+        public void run() {
+            long interval = MIN_INTERVAL_NANOS;
+            while (true) {
+                boolean progressed = drainPending();
+                if (pumps.isEmpty()) {
+                    LockSupport.park(this);
+                    interval = MIN_INTERVAL_NANOS;
+                    continue;
+                }
+
+                for (int i = 0; i < pumps.size();) {
+                    StreamPump pump = pumps.get(i);
+                    int result = pump.poll(buffer);
+                    if (result < 0) {
+                        // 順序は問わないため、末尾の要素で置き換えて削除する
+                        StreamPump last = pumps.remove(pumps.size() - 1);
+                        if (last != pump) {
+                            pumps.set(i, last);
+                        }
+                        progressed = true;
+                        continue;
+                    }
+                    if (result > 0) {
+                        progressed = true;
+                    }
+                    i++;
+                }
+
+                if (progressed) {
+                    interval = MIN_INTERVAL_NANOS;
+                } else {
+                    interval = Math.min(interval * 2L, maxIntervalNanos);
+                    LockSupport.parkNanos(this, interval);
+                }
+            }
+        }
+
+        private boolean drainPending() {
+            boolean added = false;
+            for (StreamPump pump = pending.poll(); pump != null; pump = pending.poll()) {
+                if (buffer.capacity() < pump.getBufferSize()) {
+                    // バッファはスレッドごとに1つだけ持ち、最大のバッファサイズに合わせて拡張する
+                    buffer = ByteBuffer.allocate(pump.getBufferSize());
+                }
+                pumps.add(pump);
+                added = true;
+            }
+            return added;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import jp.ambrosoli.salmon.config.SalmonConfig;
+
+/**
+ * <p>
+ * 非同期で実行したプロセスの終了を1つのスレッドで監視します。
+ * </p>
+ *
+ * <p>
+ * 監視中のプロセスは{@link Process#isAlive()}でポーリングされます。プロセスの終了を検知しなかった場合はポーリング間隔を
+ * {@code reaper.poll.interval}の値(ミリ秒)まで倍々に延ばし、新しいプロセスの登録または終了を検知した時点で最短の間隔に戻します。
+ * これにより、同時に実行するプロセスの数に関わらずスレッドは1つで済みます。
+ * </p>
+ */
+final class ProcessReaper implements Runnable {
+
+    /**
+     * <p>
+     * プロセスの終了を受け取るリスナーです。
+     * </p>
+     */
+    @FunctionalInterface
+    interface ExitListener {
+
+        /**
+         * <p>
+         * プロセスが終了した時点で監視スレッドから呼び出されます。
+         * </p>
+         *
+         * @param process
+         *            終了したプロセス
+         */
+        void exited(Process process);
+    }
+
+    private static final String THREAD_NAME = "salmon-reaper"; //$NON-NLS-1$
+    private static final long MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    private static class Holder {
+        private static final ProcessReaper INSTANCE = new ProcessReaper(
+                TimeUnit.MILLISECONDS.toNanos(SalmonConfig.getReaperPollIntervalMillis()));
+    }
+
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+    private final List<Entry> watching = new ArrayList<>();
+    private final long maxIntervalNanos;
+    private final Thread thread;
+
+    private ProcessReaper(final long maxIntervalNanos) {
+        this.maxIntervalNanos = Math.max(MIN_INTERVAL_NANOS, maxIntervalNanos);
+        thread = new Thread(this, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static ProcessReaper getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * <p>
+     * プロセスを監視対象に登録します。
+     * </p>
+     *
+     * @param process
+     *            プロセス
+     * @param listener
+     *            プロセスの終了を受け取るリスナー
+     */
+    void register(final Process process, final ExitListener listener) {
+        pending.add(new Entry(process, listener));
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        long interval = MIN_INTERVAL_NANOS;
+        while (true) {
+            boolean changed = drainPending();
+            if (watching.isEmpty()) {
+                LockSupport.park(this);
+                interval = MIN_INTERVAL_NANOS;
+                continue;
+            }
+
+            for (int i = 0; i < watching.size();) {
+                Entry entry = watching.get(i);
+                if (!entry.process.isAlive()) {
+                    // 順序は問わないため、末尾の要素で置き換えて削除する
+                    Entry last = watching.remove(watching.size() - 1);
+                    if (last != entry) {
+                        watching.set(i, last);
+                    }
+                    entry.notifyExited();
+                    changed = true;
+                    continue;
+                }
+                i++;
+            }
+
+            interval = changed ? MIN_INTERVAL_NANOS : Math.min(interval * 2L, maxIntervalNanos);
+            LockSupport.parkNanos(this, interval);
+        }
+    }
+
+    private boolean drainPending() {
+        boolean added = false;
+        for (Entry entry = pending.poll(); entry != null; entry = pending.poll()) {
+            watching.add(entry);
+            added = true;
+        }
+        return added;
+    }
+
+    private static class Entry {
+
+        private final Process process;
+        private final ExitListener listener;
+
+        Entry(final Process process, final ExitListener listener) {
+            this.process = process;
+            this.listener = listener;
+        }
+
+        void notifyExited() {
+            try {
+                listener.exited(process);
+            } catch (Throwable thrown) {
+                // 監視スレッドを停止させないための最後の手段。リスナーは例外を自身で処理してコマンドを終了させること
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import jp.ambrosoli.salmon.utils.DaemonThreadFactory;
+
+/**
+ * <p>
+ * プロセスの標準入力に入力を書き込みます。
+ * </p>
+ *
+ * <p>
+ * 書き込みは{@link StreamPump}による出力の読み取りと並行して専用のスレッドで行われるため、入力と出力の両方でパイプのバッファが一杯になっても
+ * デッドロックしません。入力の終端に達した時点で標準入力を閉じます。
+ * </p>
+ *
+ * <p>
+ * プロセスが入力を全て読み取らずに終了した場合は、書き込みの失敗を無視します。入力の読み取りに失敗した場合は{@code onFailure}に例外を渡します。
+ * </p>
+ */
+final class StdinWriter implements Runnable {
+
+    private static final String THREAD_NAME_PREFIX = "salmon-stdin"; //$NON-NLS-1$
+
+    private static class Holder {
+        private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+                TimeUnit.SECONDS, new SynchronousQueue<>(), new DaemonThreadFactory(THREAD_NAME_PREFIX));
+    }
+
+    private final InputStream source;
+    private final OutputStream stdin;
+    private final int bufferSize;
+    private final Consumer<IOException> onFailure;
+
+    private StdinWriter(final InputStream source, final OutputStream stdin, final int bufferSize,
+            final Consumer<IOException> onFailure) {
+        this.source = source;
+        this.stdin = stdin;
+        this.bufferSize = bufferSize;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * <p>
+     * 標準入力への書き込みを開始します。
+     * </p>
+     *
+     * @param process
+     *            プロセス
+     * @param source
+     *            入力
+     * @param bufferSize
+     *            書き込みに使用するバッファのサイズ
+     * @param onFailure
+     *            入力の読み取りに失敗した場合に呼び出される処理
+     */
+    static void start(final Process process, final InputStream source, final int bufferSize,
+            final Consumer<IOException> onFailure) {
+        Holder.EXECUTOR.execute(new StdinWriter(source, process.getOutputStream(), bufferSize, onFailure));
+    }
+
+    @Override
+    public void run() {
+        byte[] buff = new byte[bufferSize];
+        try (InputStream in = source) {
+            int size = 0;
+            while ((size = in.read(buff)) != -1) {
+                if (!write(buff, size)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            onFailure.accept(e);
+        } finally {
+            closeStdin();
+        }
+    }
+
+    private boolean write(final byte[] buff, final int size) {
+        try {
+            stdin.write(buff, 0, size);
+            return true;
+        } catch (IOException e) {
+            // プロセスが入力を読み取らずに終了した場合はパイプが閉じられているため、残りの入力は書き込まない
+            return false;
+        }
+    }
+
+    private void closeStdin() {
+        try {
+            stdin.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+}
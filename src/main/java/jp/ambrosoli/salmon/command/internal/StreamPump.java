@@ -0,0 +1,267 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import jp.ambrosoli.salmon.command.io.OutputSink;
+import jp.ambrosoli.salmon.config.SalmonConfig;
+import jp.ambrosoli.salmon.utils.DaemonThreadFactory;
+
+/**
+ * <p>
+ * プロセスの出力を読み取り、{@link OutputSink}に書き込みます。
+ * </p>
+ *
+ * <p>
+ * パイプのバッファが一杯になるとプロセスは書き込みでブロックするため、出力はプロセスの実行中に読み取り続ける必要があります。
+ * {@link OutputSink}への書き込みに失敗した場合も、プロセスを停止させないよう出力の終端まで読み捨てます。
+ * 書き込みや読み取りに失敗した場合と{@link #abort(Throwable)}を呼び出した場合は、{@link OutputSink#close()}の代わりに
+ * {@link OutputSink#abort(Throwable)}で書き込み先を閉じます。
+ * </p>
+ *
+ * <p>
+ * バックグラウンドで起動された子孫プロセスが出力を引き継いでいる場合、プロセスが終了しても出力は終端に達しません。
+ * {@link #detach()}を呼び出すと、終端を待たずに{@link OutputSink}を閉じ、それ以降の出力は終端まで読み捨てます。
+ * </p>
+ *
+ * <p>
+ * 通常は出力ごとにスレッドを割り当ててブロッキングで読み取ります。salmon.propertiesの{@code pump.multiplexed}が{@code true}
+ * の場合は、{@link MultiplexedPump}の固定数のスレッドで全てのプロセスの出力を読み取ります。
+ * </p>
+ */
+final class StreamPump implements Runnable {
+
+    private static final String THREAD_NAME_PREFIX = "salmon-pump"; //$NON-NLS-1$
+    private static final long MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final long MAX_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private static class Holder {
+        private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+                TimeUnit.SECONDS, new SynchronousQueue<>(), new DaemonThreadFactory(THREAD_NAME_PREFIX));
+    }
+
+    private final Process process;
+    private final InputStream stream;
+    private final OutputSink sink;
+    private final int bufferSize;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private Throwable failure;
+    private volatile Throwable aborted;
+    private volatile boolean closed;
+
+    private StreamPump(final Process process, final InputStream stream, final OutputSink sink,
+            final int bufferSize) {
+        this.process = process;
+        this.stream = stream;
+        this.sink = sink;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * <p>
+     * 出力の読み取りを開始します。
+     * </p>
+     *
+     * @param process
+     *            プロセス
+     * @param stream
+     *            プロセスの出力
+     * @param sink
+     *            書き込み先
+     * @param bufferSize
+     *            読み取りに使用するバッファのサイズ
+     * @return 開始した{@link StreamPump}
+     */
+    static StreamPump start(final Process process, final InputStream stream, final OutputSink sink,
+            final int bufferSize) {
+        StreamPump pump = new StreamPump(process, stream, sink, bufferSize);
+        if (SalmonConfig.isPumpMultiplexed()) {
+            MultiplexedPump.getInstance().register(pump);
+        } else {
+            Holder.EXECUTOR.execute(pump);
+        }
+        return pump;
+    }
+
+    /**
+     * <p>
+     * 出力の終端まで読み取るか{@link #detach()}により書き込み先を閉じた時点で完了する{@link CompletableFuture}を返します。
+     * </p>
+     *
+     * @return 書き込み先を閉じた時点で完了する{@link CompletableFuture}。書き込み先で例外が発生した場合は例外的に完了します
+     */
+    CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * <p>
+     * 出力の終端を待たずに書き込み先を閉じます。
+     * </p>
+     *
+     * <p>
+     * 子孫プロセスが書き込みでブロックしないよう、それ以降の出力は終端まで読み捨てます。
+     * 書き込み先を閉じる処理は呼び出し元をブロックしないよう、読み取りとは別のスレッドで実行します。
+     * </p>
+     */
+    void detach() {
+        if (!closed) {
+            Holder.EXECUTOR.execute(this::closeSink);
+        }
+    }
+
+    /**
+     * <p>
+     * 出力を終端まで読み取れないことを通知します。
+     * </p>
+     *
+     * <p>
+     * プロセスを強制終了する前に呼び出してください。それ以降に書き込み先を閉じる場合は{@link OutputSink#abort(Throwable)}を呼び出します。
+     * 書き込み先をすでに閉じている場合は何もしません。
+     * </p>
+     *
+     * @param cause
+     *            出力を終端まで読み取れない原因
+     */
+    void abort(final Throwable cause) {
+        if (aborted == null) {
+            aborted = cause;
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public void run() {
+        byte[] bytes = new byte[bufferSize];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            awaitReady();
+            for (int n = stream.read(bytes); n != -1; n = stream.read(bytes)) {
+                transfer(buffer, n);
+                awaitReady();
+            }
+        } catch (IOException e) {
+            readFailed(e);
+        }
+        finish();
+    }
+
+    private void awaitReady() throws InterruptedIOException {
+        long interval = MIN_INTERVAL_NANOS;
+        while (!isReady()) {
+            LockSupport.parkNanos(this, interval);
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+            interval = Math.min(interval * 2L, MAX_INTERVAL_NANOS);
+        }
+    }
+
+    private boolean isReady() {
+        // 書き込みに失敗した後や書き込み先を閉じた後は読み捨てるため、書き込み先の状態に関わらず読み取る
+        return failure != null || closed || sink.isReady();
+    }
+
+    /**
+     * <p>
+     * ブロックせずに読み取れる出力を1回だけ読み取ります。
+     * </p>
+     *
+     * <p>
+     * プロセスが終了した後も、バックグラウンドで起動された子孫プロセスが出力を引き継いでいる場合は読み取りがブロックします。
+     * 同じスレッドで読み取る他の出力を止めないよう、プロセスの終了後に読み取れる出力がなくなった時点で、
+     * 終端までの読み取りは専用のスレッドに引き継ぎます。
+     * </p>
+     *
+     * @param buffer
+     *            読み取りに使用するバッファ。配列を持つ必要があります
+     * @return 出力を読み取った場合{@code 1}、読み取れる出力がない場合{@code 0}、
+     *         終端まで読み取った場合または専用のスレッドに引き継いだ場合{@code -1}
+     */
+    int poll(final ByteBuffer buffer) {
+        if (!isReady()) {
+            return 0;
+        }
+        byte[] bytes = buffer.array();
+        int length = Math.min(bytes.length, bufferSize);
+        try {
+            int available = stream.available();
+            if (available > 0) {
+                transfer(buffer, stream.read(bytes, 0, Math.min(available, length)));
+                return 1;
+            }
+            if (process.isAlive()) {
+                return 0;
+            }
+            Holder.EXECUTOR.execute(this);
+            return -1;
+        } catch (IOException e) {
+            readFailed(e);
+        }
+        finish();
+        return -1;
+    }
+
+    private synchronized void transfer(final ByteBuffer buffer, final int n) {
+        if (closed || failure != null || n <= 0) {
+            return;
+        }
+        buffer.clear().limit(n);
+        try {
+            sink.write(buffer);
+        } catch (Throwable thrown) {
+            failure = thrown;
+        }
+    }
+
+    private synchronized void readFailed(final IOException e) {
+        // プロセスの終了や強制終了によりストリームが閉じられた場合は出力の終端として扱う
+        if (failure == null && aborted == null && (e instanceof InterruptedIOException || process.isAlive())) {
+            failure = e;
+        }
+    }
+
+    private void finish() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+        closeSink();
+    }
+
+    private synchronized void closeSink() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Throwable cause = failure != null ? failure : aborted;
+        try {
+            if (cause != null) {
+                sink.abort(cause);
+            } else {
+                sink.close();
+            }
+        } catch (Throwable thrown) {
+            if (failure == null) {
+                failure = thrown;
+            }
+        }
+        if (failure != null) {
+            completion.completeExceptionally(failure);
+        } else {
+            completion.complete(null);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import jp.ambrosoli.salmon.config.SalmonConfig;
+
+/**
+ * <p>
+ * 全てのコマンドのタイムアウトを1つのスレッドで管理するハッシュ化タイマーホイールです。
+ * </p>
+ *
+ * <p>
+ * タイムアウトの登録はキューへの追加、取り消しはフラグの更新のみで行われるため、どちらも定数時間で完了します。
+ * 登録されたタイムアウトは{@code timeout.tick}の値(ミリ秒)の粒度で、{@code timeout.wheel.size}個のバケットに振り分けられます。
+ * 取り消されたタイムアウトは、そのバケットの処理時に取り除かれます。
+ * </p>
+ */
+public final class TimeoutWheel {
+
+    /**
+     * <p>
+     * 登録したタイムアウトを表します。
+     * </p>
+     */
+    public interface Timeout {
+
+        /**
+         * <p>
+         * タイムアウトを取り消します。
+         * </p>
+         *
+         * @return 取り消した場合{@code true}、すでに期限切れの処理が実行されていた場合{@code false}
+         */
+        boolean cancel();
+    }
+
+    private static final String THREAD_NAME = "salmon-timer"; //$NON-NLS-1$
+
+    private static class Holder {
+        private static final TimeoutWheel INSTANCE = new TimeoutWheel(
+                TimeUnit.MILLISECONDS.toNanos(SalmonConfig.getTimeoutTickMillis()),
+                SalmonConfig.getTimeoutWheelSize());
+    }
+
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+    private final List<Task>[] wheel;
+    private final int mask;
+    private final long tickNanos;
+    private final long startTime;
+    private final Thread thread;
+    private volatile boolean idle;
+    private long tick;
+    private int scheduled;
+
+    private TimeoutWheel(final long tickNanos, final int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        wheel = newBuckets(size);
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        mask = size - 1;
+        this.tickNanos = Math.max(1L, tickNanos);
+        startTime = System.nanoTime();
+        thread = new Thread(this::loop, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static TimeoutWheel getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * <p>
+     * 指定した時間の経過後に{@code action}を実行するタイムアウトを登録します。
+     * </p>
+     *
+     * <p>
+     * {@code action}はタイマースレッドで実行されるため、ブロックする処理を行ってはいけません。
+     * </p>
+     *
+     * @param delay
+     *            タイムアウト時間、0以下の場合は次の刻みで期限切れになります
+     * @param unit
+     *            タイムアウト時間の単位
+     * @param action
+     *            期限切れの時点で実行する処理
+     * @return 登録したタイムアウト
+     */
+    public Timeout schedule(final long delay, final TimeUnit unit, final Runnable action) {
+        Task task = new Task(System.nanoTime() - startTime + Math.max(0L, unit.toNanos(delay)), action);
+        pending.add(task);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return task;
+    }
+
+    private void loop() {
+        while (true) {
+            if (scheduled == 0 && pending.isEmpty()) {
+                idle = true;
+                if (pending.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+                // 停止していた間の刻みは処理する必要がないため、現在時刻に合わせる
+                tick = (System.nanoTime() - startTime) / tickNanos;
+                continue;
+            }
+
+            long deadline = tickNanos * (tick + 1L);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0L) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+
+            transferPending();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        for (Task task = pending.poll(); task != null; task = pending.poll()) {
+            if (task.isDone()) {
+                continue;
+            }
+            long calculated = task.deadline / tickNanos;
+            task.remainingRounds = (calculated - tick) / wheel.length;
+            // 期限を過ぎたタイムアウトは現在の刻みで処理する
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(task);
+            scheduled++;
+        }
+    }
+
+    private void expire(final List<Task> bucket, final long deadline) {
+        for (int i = 0; i < bucket.size();) {
+            Task task = bucket.get(i);
+            if (!task.isDone() && (task.remainingRounds > 0L || task.deadline > deadline)) {
+                task.remainingRounds--;
+                i++;
+                continue;
+            }
+            // 順序は問わないため、末尾の要素で置き換えて削除する
+            Task last = bucket.remove(bucket.size() - 1);
+            if (last != task) {
+                bucket.set(i, last);
+            }
+            scheduled--;
+            task.expire();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T>[] newBuckets(final int size) {
+        return (List<T>[]) new List<?>[size];
+    }
+
+    private static class Task implements Timeout {
+
+        private final long deadline;
+        private final Runnable action;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private long remainingRounds;
+
+        Task(final long deadline, final Runnable action) {
+            this.deadline = deadline;
+            this.action = action;
+        }
+
+        @Override
+        public boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+
+        void expire() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                action.run();
+            } catch (Throwable thrown) {
+                // タイマースレッドを停止させないため、例外は無視する
+            }
+        }
+    }
+}
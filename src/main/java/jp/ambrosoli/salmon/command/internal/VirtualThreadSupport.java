@@ -0,0 +1,128 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * 仮想スレッドに関する処理を提供します。
+ * </p>
+ *
+ * <p>
+ * Java 8でもビルドできるよう、Java 21以降のAPIはリフレクションで呼び出します。APIが見つからない環境では仮想スレッドは使用できず、
+ * {@link #waitFor(Process)}は{@link Process#waitFor()}で待機します。
+ * </p>
+ */
+final class VirtualThreadSupport {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final Method IS_VIRTUAL;
+    private static final Method ON_EXIT;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        Method isVirtual = null;
+        Method onExit = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder"); //$NON-NLS-1$
+            ofVirtual = Thread.class.getMethod("ofVirtual"); //$NON-NLS-1$
+            name = builder.getMethod("name", String.class, long.class); //$NON-NLS-1$
+            factory = builder.getMethod("factory"); //$NON-NLS-1$
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class); //$NON-NLS-1$
+            isVirtual = Thread.class.getMethod("isVirtual"); //$NON-NLS-1$
+            onExit = Process.class.getMethod("onExit"); //$NON-NLS-1$
+        } catch (ReflectiveOperationException e) {
+            // Java 21より前の環境では仮想スレッドを使用しない
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        IS_VIRTUAL = isVirtual;
+        ON_EXIT = onExit;
+    }
+
+    private VirtualThreadSupport() {
+    }
+
+    /**
+     * <p>
+     * 仮想スレッドが使用できるかどうかを返します。
+     * </p>
+     *
+     * @return Java 21以降で実行されている場合{@code true}、その他の場合{@code false}
+     */
+    static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * <p>
+     * 処理ごとに仮想スレッドを生成する{@link Executor}を生成します。
+     * </p>
+     *
+     * @param prefix
+     *            スレッド名の接頭辞
+     * @return 仮想スレッドの{@link Executor}
+     * @throws UnsupportedOperationException
+     *             仮想スレッドが使用できない場合
+     */
+    static Executor newExecutor(final String prefix) {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException();
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix + "-", 1L); //$NON-NLS-1$
+            return (Executor) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, FACTORY.invoke(builder));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    /**
+     * <p>
+     * プロセスの終了を待ちます。
+     * </p>
+     *
+     * <p>
+     * {@link Process#waitFor()}はモニタ上で待機するため、仮想スレッドから呼び出すとキャリアスレッドを占有します。
+     * 仮想スレッドから呼び出された場合は、仮想スレッドがアンマウントされるよう{@code Process.onExit()}の完了を待ちます。
+     * </p>
+     *
+     * @param process
+     *            プロセス
+     * @throws InterruptedException
+     *             待機中に割り込まれた場合
+     */
+    static void waitFor(final Process process) throws InterruptedException {
+        if (!isAvailable() || !isVirtual(Thread.currentThread())) {
+            process.waitFor();
+            return;
+        }
+        try {
+            ((CompletableFuture<?>) ON_EXIT.invoke(process)).get();
+        } catch (IllegalAccessException | InvocationTargetException | ExecutionException e) {
+            process.waitFor();
+        }
+    }
+
+    private static boolean isVirtual(final Thread thread) {
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * 出力を全てメモリ上に保持する{@link OutputSink}です。
+ * </p>
+ */
+class CaptureSink implements OutputSink, CapturedOutput {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count;
+    private boolean closed;
+
+    @Override
+    public synchronized void write(final ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (count + length > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + length));
+        }
+        buffer.get(buf, count, length);
+        count += length;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new CaptureStream();
+    }
+
+    @Override
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    private synchronized int read(final int pos, final byte[] b, final int off, final int len) throws IOException {
+        try {
+            while (pos >= count && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (pos >= count) {
+            return -1;
+        }
+        int n = Math.min(len, count - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        return n;
+    }
+
+    private synchronized int available(final int pos) {
+        return count - pos;
+    }
+
+    private class CaptureStream extends InputStream {
+
+        private int pos;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = CaptureSink.this.read(pos, b, off, len);
+            if (n > 0) {
+                pos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return CaptureSink.this.available(pos);
+        }
+    }
+}
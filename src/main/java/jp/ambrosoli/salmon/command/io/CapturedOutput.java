@@ -0,0 +1,94 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * メモリ上に保持したコマンドの出力を表すインタフェースです。
+ * </p>
+ *
+ * <p>
+ * {@link OutputSinks#capture()}、{@link OutputSinks#tail(int)}、{@link OutputSinks#tailLines(int)}、
+ * {@link OutputSinks#spill(int)}で生成した
+ * {@link OutputSink}はこのインタフェースを実装し、{@link jp.ambrosoli.salmon.command.CommandState#getStdout()}や
+ * {@link jp.ambrosoli.salmon.command.CommandState#getCapturedStdout()}などから読み取れるようになります。
+ * </p>
+ */
+public interface CapturedOutput {
+
+    /**
+     * <p>
+     * 保持している出力を先頭から読み取る{@link InputStream}を返します。
+     * </p>
+     *
+     * <p>
+     * コマンドの実行中に読み取った場合は、出力が書き込まれるか出力の終端に達するまでブロックします。
+     * 末尾のみを保持する場合は、出力の終端に達するまでブロックします。
+     * </p>
+     *
+     * @return 出力を読み取る{@link InputStream}
+     */
+    InputStream openStream();
+
+    /**
+     * <p>
+     * 現時点で保持している出力をバイト配列で返します。
+     * </p>
+     *
+     * <p>
+     * このメソッドはブロックしません。
+     * </p>
+     *
+     * @return 保持している出力
+     */
+    byte[] toByteArray();
+
+    /**
+     * <p>
+     * 現時点で保持している出力のバイト数を返します。
+     * </p>
+     *
+     * @return 保持している出力のバイト数。{@link Integer#MAX_VALUE}を超える場合は{@link Integer#MAX_VALUE}
+     */
+    int size();
+
+    /**
+     * <p>
+     * 現時点で保持している出力のバイト数を返します。
+     * </p>
+     *
+     * @return 保持している出力のバイト数
+     */
+    default long length() {
+        return size();
+    }
+
+    /**
+     * <p>
+     * 現時点で保持している出力を読み取り専用の{@link ByteBuffer}で返します。
+     * </p>
+     *
+     * <p>
+     * このメソッドはブロックしません。
+     * </p>
+     *
+     * @return 保持している出力
+     */
+    default ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(toByteArray()).asReadOnlyBuffer();
+    }
+
+    /**
+     * <p>
+     * 保持している出力を破棄し、使用しているリソースを解放します。
+     * </p>
+     *
+     * <p>
+     * {@link jp.ambrosoli.salmon.command.CommandState#close()}から呼び出されます。解放した後の読み取りの結果は保証されません。
+     * </p>
+     */
+    default void release() {
+        // do nothing
+    }
+}
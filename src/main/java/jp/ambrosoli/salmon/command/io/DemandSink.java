@@ -0,0 +1,226 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.ambrosoli.salmon.messages.Messages;
+
+/**
+ * <p>
+ * 購読者が要求した数だけ出力を通知する{@link OutputSink}です。
+ * </p>
+ *
+ * <p>
+ * 購読者への通知は全て1つのループで直列に行うため、{@link #onNext(ByteBuffer)}、{@link #onError(Throwable)}、
+ * {@link #onComplete()}が並行して呼び出されることはありません。{@link #start()}を呼び出すまでは通知を行わず、
+ * {@link #isReady()}は{@code false}を返します。
+ * 出力の読み取りも止まるため、{@link #start()}と{@link #request(long)}を呼び出す前に同期的に実行するとプロセスが終了しません。
+ * </p>
+ *
+ * <p>
+ * 出力を終端まで読み取れなかった場合は、未通知の出力を破棄して{@link #onError(Throwable)}を通知します。
+ * 購読が取り消された場合や購読者が例外をスローした場合、以降の出力は読み捨てられます。
+ * </p>
+ *
+ * <p>
+ * Java 8で出力を要求した分だけ受け取る場合は、このクラスを継承して使用します。Java 9以降では、このクラスを
+ * {@code java.util.concurrent.Flow.Publisher}として公開する{@code OutputPublisher}も使用できます。{@code OutputPublisher}は
+ * マルチリリースJARの{@code META-INF/versions/9}にのみ格納され、Java 9以降のJDKでビルドした場合のみJARに含まれます。
+ * </p>
+ *
+ * <pre>
+ * DemandSink sink = new DemandSink() {
+ *
+ *     protected void onNext(ByteBuffer buffer) {
+ *         process(buffer);
+ *         request(1L);
+ *     }
+ *
+ *     protected void onError(Throwable thrown) {
+ *     }
+ *
+ *     protected void onComplete() {
+ *     }
+ * };
+ * sink.start();
+ * sink.request(1L);
+ * command("cat").options("large.log").stdout(() -&gt; sink).executeAsync();
+ * </pre>
+ */
+public abstract class DemandSink implements OutputSink {
+
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean started;
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private boolean terminated;
+
+    /**
+     * <p>
+     * 出力を購読者に通知します。
+     * </p>
+     *
+     * <p>
+     * 呼び出し元のバッファは再利用されるため、出力は新しい{@link ByteBuffer}に複製して通知します。
+     * </p>
+     */
+    @Override
+    public void write(final ByteBuffer buffer) {
+        if (cancelled || error != null) {
+            buffer.position(buffer.limit());
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer).flip();
+        queue.add(copy);
+        drain();
+    }
+
+    /**
+     * <p>
+     * 購読者からの未処理の要求がある場合、または購読が取り消されたかエラーを通知する場合に{@code true}を返します。
+     * </p>
+     */
+    @Override
+    public boolean isReady() {
+        return cancelled || error != null || queue.isEmpty() && demand.get() > 0L;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    /**
+     * <p>
+     * 未通知の出力を破棄し、{@code cause}を購読者に通知します。
+     * </p>
+     */
+    @Override
+    public void abort(final Throwable cause) {
+        error(cause);
+    }
+
+    /**
+     * <p>
+     * 購読者への通知を開始します。
+     * </p>
+     *
+     * <p>
+     * 購読者に購読の開始を通知した後に呼び出してください。それまでに受け取った出力は、呼び出した時点から通知します。
+     * </p>
+     */
+    public final void start() {
+        started = true;
+        drain();
+    }
+
+    /**
+     * <p>
+     * 購読者からの要求を受け付けます。
+     * </p>
+     *
+     * @param n
+     *            要求する件数。0以下の場合は{@link IllegalArgumentException}を購読者に通知します
+     */
+    public final void request(final long n) {
+        if (n <= 0L) {
+            error(new IllegalArgumentException(Messages.getString("DemandSink.error.request", n))); //$NON-NLS-1$
+            return;
+        }
+        demand.getAndAccumulate(n, (current, added) -> {
+            long sum = current + added;
+            return sum < 0L ? Long.MAX_VALUE : sum;
+        });
+        drain();
+    }
+
+    /**
+     * <p>
+     * 購読を取り消します。以降の出力は読み捨てられます。
+     * </p>
+     */
+    public final void cancel() {
+        cancelled = true;
+        queue.clear();
+    }
+
+    /**
+     * <p>
+     * 要求に応じて出力を1件通知します。
+     * </p>
+     *
+     * @param buffer
+     *            出力。呼び出し後も参照できます
+     */
+    protected abstract void onNext(ByteBuffer buffer);
+
+    /**
+     * <p>
+     * 出力を終端まで読み取れなかった場合や、0以下の件数を要求した場合に通知します。以降は何も通知しません。
+     * </p>
+     *
+     * @param thrown
+     *            原因
+     */
+    protected abstract void onError(Throwable thrown);
+
+    /**
+     * <p>
+     * 全ての出力を通知した後に通知します。以降は何も通知しません。
+     * </p>
+     */
+    protected abstract void onComplete();
+
+    private void error(final Throwable thrown) {
+        if (error == null) {
+            error = thrown;
+        }
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            if (!started) {
+                continue;
+            }
+            if (cancelled || terminated) {
+                queue.clear();
+                continue;
+            }
+            try {
+                if (error != null) {
+                    terminated = true;
+                    queue.clear();
+                    onError(error);
+                    continue;
+                }
+                while (demand.get() > 0L && !cancelled && error == null) {
+                    ByteBuffer buffer = queue.poll();
+                    if (buffer == null) {
+                        break;
+                    }
+                    demand.decrementAndGet();
+                    onNext(buffer);
+                }
+                if (closed && queue.isEmpty() && error == null && !cancelled) {
+                    terminated = true;
+                    onComplete();
+                }
+            } catch (Throwable thrown) {
+                // 購読者が例外をスローした場合は購読を取り消す
+                cancel();
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+}
@@ -0,0 +1,135 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import jp.ambrosoli.salmon.event.EventHandler;
+import jp.ambrosoli.salmon.event.EventHandlingException;
+
+/**
+ * <p>
+ * 出力を行ごとにデコードしてイベントハンドラに渡す{@link OutputSink}です。
+ * </p>
+ *
+ * <p>
+ * デコーダとバッファは書き込みの間で再利用されるため、行が長くなりバッファを拡張する場合を除いてオブジェクトを生成しません。
+ * イベントハンドラに渡す{@link CharSequence}は内部のバッファそのものであり、呼び出しの間のみ有効です。
+ * </p>
+ */
+class LineSink implements OutputSink {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final CharsetDecoder decoder;
+    private final EventHandler<CharSequence> handler;
+    private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private CharBuffer chars = CharBuffer.allocate(INITIAL_CAPACITY);
+    private int scanned;
+
+    LineSink(final Charset charset, final EventHandler<CharSequence> handler) {
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.handler = handler;
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            if (!bytes.hasRemaining()) {
+                bytes = grow(bytes);
+            }
+            int n = Math.min(buffer.remaining(), bytes.remaining());
+            if (buffer.hasArray()) {
+                bytes.put(buffer.array(), buffer.arrayOffset() + buffer.position(), n);
+                buffer.position(buffer.position() + n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    bytes.put(buffer.get());
+                }
+            }
+            bytes.flip();
+            decode(false);
+            // マルチバイト文字の途中までの入力は次の書き込みに持ち越す
+            bytes.compact();
+        }
+    }
+
+    @Override
+    public void close() {
+        bytes.flip();
+        decode(true);
+        while (decoder.flush(chars).isOverflow()) {
+            chars = grow(chars);
+        }
+        fireLines();
+        if (chars.position() > 0) {
+            // 改行で終わらない最終行
+            fireLine(0, chars.position());
+        }
+        bytes.clear();
+        chars.clear();
+        scanned = 0;
+        decoder.reset();
+    }
+
+    private void decode(final boolean endOfInput) {
+        while (true) {
+            int consumed = bytes.position();
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            fireLines();
+            if (!result.isOverflow()) {
+                return;
+            }
+            if (bytes.position() == consumed) {
+                // 1文字もデコードできなかった場合のみ拡張する。
+                // サロゲートペアは2文字分の空きが必要なため、空きが1文字分残っていても拡張する
+                chars = grow(chars);
+            }
+        }
+    }
+
+    private void fireLines() {
+        int end = chars.position();
+        int start = 0;
+        for (int i = scanned; i < end; i++) {
+            if (chars.get(i) == '\n') {
+                fireLine(start, i);
+                start = i + 1;
+            }
+        }
+        if (start > 0) {
+            chars.limit(end).position(start);
+            chars.compact();
+        }
+        scanned = chars.position();
+    }
+
+    private void fireLine(final int start, final int end) {
+        int position = chars.position();
+        int lineEnd = end > start && chars.get(end - 1) == '\r' ? end - 1 : end;
+        chars.limit(lineEnd).position(start);
+        try {
+            handler.handle(chars);
+        } catch (EventHandlingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EventHandlingException(e);
+        } finally {
+            chars.limit(chars.capacity()).position(position);
+        }
+    }
+
+    private static ByteBuffer grow(final ByteBuffer buffer) {
+        buffer.flip();
+        return ByteBuffer.allocate(buffer.capacity() << 1).put(buffer);
+    }
+
+    private static CharBuffer grow(final CharBuffer buffer) {
+        buffer.flip();
+        return CharBuffer.allocate(buffer.capacity() << 1).put(buffer);
+    }
+}
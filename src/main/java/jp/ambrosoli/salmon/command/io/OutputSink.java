@@ -0,0 +1,85 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * コマンドの標準出力または標準エラー出力の書き込み先を表すインタフェースです。
+ * </p>
+ *
+ * <p>
+ * プロセスの実行中は、出力を読み取るスレッドから{@link #write(ByteBuffer)}が繰り返し呼び出され、出力の終端で{@link #close()}
+ * が呼び出されます。1つのインスタンスは1回のコマンド実行でのみ使用されます。
+ * </p>
+ *
+ * @see OutputSinks
+ */
+@FunctionalInterface
+public interface OutputSink extends Closeable {
+
+    /**
+     * <p>
+     * 読み取った出力を書き込みます。
+     * </p>
+     *
+     * <p>
+     * {@code buffer}は呼び出し元で再利用されるため、このメソッドから戻った後に参照してはいけません。
+     * </p>
+     *
+     * @param buffer
+     *            読み取った出力。{@code position}から{@code limit}までが書き込む内容です
+     * @throws IOException
+     *             書き込みに失敗した場合
+     */
+    void write(ByteBuffer buffer) throws IOException;
+
+    /**
+     * <p>
+     * 次の出力を受け取れるかどうかを返します。
+     * </p>
+     *
+     * <p>
+     * {@code false}を返している間はプロセスの出力を読み取りません。パイプのバッファが一杯になるとプロセスは書き込みでブロックするため、
+     * 書き込み先の処理が追いつかない場合にプロセスの出力を抑制できます。
+     * </p>
+     *
+     * @return 次の出力を受け取れる場合{@code true}、その他の場合{@code false}
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * <p>
+     * 出力の終端に達した時点で呼び出されます。
+     * </p>
+     *
+     * @throws IOException
+     *             書き込み先のクローズに失敗した場合
+     */
+    @Override
+    default void close() throws IOException {
+        // do nothing
+    }
+
+    /**
+     * <p>
+     * 出力を終端まで読み取れなかった場合に、{@link #close()}の代わりに呼び出されます。
+     * </p>
+     *
+     * <p>
+     * タイムアウトや標準入力の失敗によりプロセスを強制終了した場合、出力の読み取りや書き込みに失敗した場合に呼び出されます。
+     * デフォルトの実装は{@link #close()}を呼び出します。
+     * </p>
+     *
+     * @param cause
+     *            出力を終端まで読み取れなかった原因
+     * @throws IOException
+     *             書き込み先のクローズに失敗した場合
+     */
+    default void abort(final Throwable cause) throws IOException {
+        close();
+    }
+}
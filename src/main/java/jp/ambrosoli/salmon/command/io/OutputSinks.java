@@ -0,0 +1,382 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import jp.ambrosoli.salmon.event.EventHandler;
+import jp.ambrosoli.salmon.messages.Messages;
+
+/**
+ * <p>
+ * 標準の{@link OutputSink}を生成するファクトリクラスです。
+ * </p>
+ */
+public class OutputSinks {
+
+    private static final int DEFAULT_TAIL_LINES_BYTES = 64 * 1024;
+
+    /**
+     * <p>
+     * 出力を全てメモリ上に保持する{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 生成した{@link OutputSink}は{@link CapturedOutput}を実装します。
+     * 標準出力と標準エラー出力の書き込み先を指定しない場合はこの{@link OutputSink}が使用されます。
+     * </p>
+     *
+     * @return {@link OutputSink}
+     */
+    public static OutputSink capture() {
+        return new CaptureSink();
+    }
+
+    /**
+     * <p>
+     * 出力の末尾{@code maxBytes}バイトのみを保持する{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 出力は固定サイズのリングバッファに保持されるため、出力の量に関わらず使用するメモリは{@code maxBytes}バイトを超えません。
+     * 生成した{@link OutputSink}は{@link CapturedOutput}を実装します。
+     * </p>
+     *
+     * @param maxBytes
+     *            保持するバイト数
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code maxBytes}が0以下の場合
+     */
+    public static OutputSink tail(final int maxBytes) {
+        return new TailSink(requirePositive(maxBytes), Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>
+     * 出力の末尾{@code maxLines}行のみを保持する{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 使用するメモリを制限するため、保持するのは末尾64KiBのうちの{@code maxLines}行です。
+     * </p>
+     *
+     * @param maxLines
+     *            保持する行数
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code maxLines}が0以下の場合
+     * @see #tailLines(int, int)
+     */
+    public static OutputSink tailLines(final int maxLines) {
+        return tailLines(maxLines, DEFAULT_TAIL_LINES_BYTES);
+    }
+
+    /**
+     * <p>
+     * 出力の末尾{@code maxBytes}バイトのうち、末尾{@code maxLines}行のみを保持する{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 行の区切りは改行文字({@code \n})で判定します。生成した{@link OutputSink}は{@link CapturedOutput}を実装します。
+     * </p>
+     *
+     * @param maxLines
+     *            保持する行数
+     * @param maxBytes
+     *            保持するバイト数の上限
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code maxLines}または{@code maxBytes}が0以下の場合
+     */
+    public static OutputSink tailLines(final int maxLines, final int maxBytes) {
+        return new TailSink(requirePositive(maxBytes), requirePositive(maxLines));
+    }
+
+    /**
+     * <p>
+     * 出力を{@code threshold}バイトまではメモリ上に保持し、超えた時点で一時ファイルに退避する{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 一時ファイルはデフォルトの一時ファイル用のディレクトリに作成されます。
+     * </p>
+     *
+     * @param threshold
+     *            メモリ上に保持するバイト数の上限
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code threshold}が0以下の場合
+     * @see #spill(int, Path)
+     */
+    public static OutputSink spill(final int threshold) {
+        return new SpillSink(requirePositive(threshold), null);
+    }
+
+    /**
+     * <p>
+     * 出力を{@code threshold}バイトまではメモリ上に保持し、超えた時点で{@code directory}の一時ファイルに退避する{@link OutputSink}
+     * を生成します。
+     * </p>
+     *
+     * <p>
+     * 出力の量に関わらず使用するメモリは{@code threshold}バイトを超えないため、大量の出力を全て保持する場合に使用します。
+     * 生成した{@link OutputSink}は{@link SpilledOutput}を実装します。一時ファイルは{@link SpilledOutput#release()}または
+     * {@link jp.ambrosoli.salmon.command.CommandState#close()}で削除されるため、コマンドの実行結果は使用後に閉じてください。
+     * </p>
+     *
+     * @param threshold
+     *            メモリ上に保持するバイト数の上限
+     * @param directory
+     *            一時ファイルを作成するディレクトリ
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code threshold}が0以下の場合
+     */
+    public static OutputSink spill(final int threshold, final Path directory) {
+        return new SpillSink(requirePositive(threshold), directory);
+    }
+
+    /**
+     * <p>
+     * 出力を読み捨てる{@link OutputSink}を生成します。
+     * </p>
+     *
+     * @return {@link OutputSink}
+     */
+    public static OutputSink discard() {
+        return buffer -> buffer.position(buffer.limit());
+    }
+
+    /**
+     * <p>
+     * 出力をファイルに書き込む{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * ファイルが存在する場合は上書きします。ファイルは最初の出力を書き込む時点で開かれます。
+     * </p>
+     *
+     * @param file
+     *            書き込み先のファイル
+     * @return {@link OutputSink}
+     */
+    public static OutputSink file(final File file) {
+        return file(file.toPath());
+    }
+
+    /**
+     * <p>
+     * 出力をファイルに書き込む{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * ファイルが存在する場合は上書きします。ファイルは最初の出力を書き込む時点で開かれます。
+     * </p>
+     *
+     * @param path
+     *            書き込み先のファイル
+     * @return {@link OutputSink}
+     */
+    public static OutputSink file(final Path path) {
+        return new OutputSink() {
+
+            private FileChannel channel;
+
+            @Override
+            public void write(final ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    open().write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                open().close();
+            }
+
+            private FileChannel open() throws IOException {
+                if (channel == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+                }
+                return channel;
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * 出力を{@link WritableByteChannel}に書き込む{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 出力はプロセスの実行中に逐次{@code channel}へ書き込まれます。{@code channel}はコマンドの終了後も閉じられないため、
+     * 呼び出し元で閉じてください。ソケットなどの{@link SelectableChannel}はブロッキングモードである必要があります。
+     * </p>
+     *
+     * @param channel
+     *            書き込み先のチャネル
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code channel}がノンブロッキングモードの場合
+     */
+    public static OutputSink channel(final WritableByteChannel channel) {
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException(Messages.getString("OutputSinks.error.nonblocking")); //$NON-NLS-1$
+        }
+        return buffer -> {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * 出力を{@link FileChannel}の指定した位置から書き込む{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 出力は{@link FileChannel#write(ByteBuffer, long)}で書き込まれるため、{@code channel}の現在位置は変更されません。
+     * 同じファイルの異なる範囲に複数のコマンドの出力を並行して書き込むことができます。
+     * {@code channel}はコマンドの終了後も閉じられないため、呼び出し元で閉じてください。
+     * </p>
+     *
+     * @param channel
+     *            書き込み先のチャネル
+     * @param position
+     *            書き込みを開始する位置
+     * @return {@link OutputSink}
+     * @throws IllegalArgumentException
+     *             {@code position}が負の場合
+     */
+    public static OutputSink channel(final FileChannel channel, final long position) {
+        if (position < 0L) {
+            throw new IllegalArgumentException(Messages.getString("OutputSinks.error.position", position)); //$NON-NLS-1$
+        }
+        return new OutputSink() {
+
+            private long offset = position;
+
+            @Override
+            public void write(final ByteBuffer buffer) throws IOException {
+                while (buffer.hasRemaining()) {
+                    offset += channel.write(buffer, offset);
+                }
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * 読み取った出力を逐次{@code consumer}に渡す{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * {@code consumer}に渡される{@link ByteBuffer}は再利用されるため、呼び出しの間のみ有効です。
+     * </p>
+     *
+     * @param consumer
+     *            出力を受け取る{@link Consumer}
+     * @return {@link OutputSink}
+     */
+    public static OutputSink callback(final Consumer<ByteBuffer> consumer) {
+        return buffer -> {
+            try {
+                consumer.accept(buffer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                buffer.position(buffer.limit());
+            }
+        };
+    }
+
+    /**
+     * <p>
+     * 出力を行ごとにデコードして{@code handler}に渡す{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * 出力はプロセスの実行中に逐次デコードされ、改行文字({@code \n})ごとに{@code handler}が呼び出されます。
+     * 行末の改行文字と、その直前の{@code \r}は取り除かれます。{@code handler}に渡される{@link CharSequence}は再利用されるため、
+     * 呼び出しの間のみ有効です。保持する場合は{@link CharSequence#toString()}で文字列に変換してください。
+     * </p>
+     *
+     * @param charset
+     *            出力の文字セット
+     * @param handler
+     *            1行ごとに呼び出されるイベントハンドラ
+     * @return {@link OutputSink}
+     */
+    public static OutputSink lines(final Charset charset, final EventHandler<CharSequence> handler) {
+        return new LineSink(charset, handler);
+    }
+
+    /**
+     * <p>
+     * 出力を{@code first}と{@code second}の両方に書き込む{@link OutputSink}を生成します。
+     * </p>
+     *
+     * <p>
+     * {@code first}が{@link CapturedOutput}を実装していても、生成した{@link OutputSink}は{@link CapturedOutput}を実装しません。
+     * </p>
+     *
+     * @param first
+     *            1つ目の書き込み先
+     * @param second
+     *            2つ目の書き込み先
+     * @return {@link OutputSink}
+     */
+    public static OutputSink tee(final OutputSink first, final OutputSink second) {
+        return new OutputSink() {
+
+            @Override
+            public void write(final ByteBuffer buffer) throws IOException {
+                int position = buffer.position();
+                first.write(buffer);
+                buffer.position(position);
+                second.write(buffer);
+            }
+
+            @Override
+            public boolean isReady() {
+                return first.isReady() && second.isReady();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    first.close();
+                } finally {
+                    second.close();
+                }
+            }
+
+            @Override
+            public void abort(final Throwable cause) throws IOException {
+                try {
+                    first.abort(cause);
+                } finally {
+                    second.abort(cause);
+                }
+            }
+        };
+    }
+
+    private static int requirePositive(final int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(Messages.getString("OutputSinks.error.size", value)); //$NON-NLS-1$
+        }
+        return value;
+    }
+}
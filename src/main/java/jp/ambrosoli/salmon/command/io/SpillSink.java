@@ -0,0 +1,262 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import jp.ambrosoli.salmon.messages.Messages;
+
+/**
+ * <p>
+ * 出力を{@code threshold}バイトまではメモリ上に保持し、超えた時点で一時ファイルに退避する{@link OutputSink}です。
+ * </p>
+ *
+ * <p>
+ * 退避した後の出力はファイルに追記され、読み取りは位置を指定して行うため、書き込み中でも並行して読み取れます。
+ * </p>
+ */
+class SpillSink implements OutputSink, SpilledOutput {
+
+    private static final String TEMP_FILE_PREFIX = "salmon-"; //$NON-NLS-1$
+    private static final String TEMP_FILE_SUFFIX = ".out"; //$NON-NLS-1$
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int threshold;
+    private final Path directory;
+    private byte[] buf;
+    private long count;
+    private boolean closed;
+    private boolean released;
+    private Path path;
+    private FileChannel channel;
+
+    SpillSink(final int threshold, final Path directory) {
+        this.threshold = threshold;
+        this.directory = directory;
+        buf = new byte[Math.min(INITIAL_CAPACITY, threshold)];
+    }
+
+    @Override
+    public synchronized void write(final ByteBuffer buffer) throws IOException {
+        ensureNotReleased();
+        int length = buffer.remaining();
+        if (channel == null && count + length > threshold) {
+            spill();
+        }
+        if (channel != null) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } else {
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, (int) Math.min(threshold, Math.max(buf.length << 1, count + length)));
+            }
+            buffer.get(buf, (int) count, length);
+        }
+        count += length;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized boolean isSpilled() {
+        return channel != null;
+    }
+
+    @Override
+    public synchronized Path toPath() throws IOException {
+        ensureNotReleased();
+        if (channel == null) {
+            spill();
+        }
+        return path;
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new SpillStream();
+    }
+
+    @Override
+    public synchronized byte[] toByteArray() {
+        int length = requireArraySize();
+        if (channel == null) {
+            return Arrays.copyOf(buf, length);
+        }
+        byte[] bytes = new byte[length];
+        try {
+            readFully(channel, ByteBuffer.wrap(bytes), 0L);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized ByteBuffer asByteBuffer() {
+        int length = requireArraySize();
+        if (channel == null) {
+            return ByteBuffer.wrap(buf, 0, length).slice().asReadOnlyBuffer();
+        }
+        try {
+            return channel.map(MapMode.READ_ONLY, 0L, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized long length() {
+        return count;
+    }
+
+    @Override
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        buf = null;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            // do nothing
+        }
+        notifyAll();
+    }
+
+    private void spill() throws IOException {
+        Path file = directory != null ? Files.createTempFile(directory, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX)
+                : Files.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        FileChannel opened = null;
+        try {
+            opened = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer memory = ByteBuffer.wrap(buf, 0, (int) count);
+            while (memory.hasRemaining()) {
+                opened.write(memory);
+            }
+        } catch (IOException e) {
+            if (opened != null) {
+                opened.close();
+            }
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        path = file;
+        channel = opened;
+        buf = null;
+    }
+
+    private void ensureNotReleased() throws ClosedChannelException {
+        if (released) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private int requireArraySize() {
+        if (released) {
+            throw new IllegalStateException(new ClosedChannelException());
+        }
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalStateException(Messages.getString("SpilledOutput.error.size", count)); //$NON-NLS-1$
+        }
+        return (int) count;
+    }
+
+    private int read(final long pos, final byte[] b, final int off, final int len) throws IOException {
+        FileChannel source;
+        int n;
+        synchronized (this) {
+            try {
+                while (pos >= count && !closed && !released) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            ensureNotReleased();
+            if (pos >= count) {
+                return -1;
+            }
+            n = (int) Math.min(len, count - pos);
+            if (channel == null) {
+                System.arraycopy(buf, (int) pos, b, off, n);
+                return n;
+            }
+            source = channel;
+        }
+        // 書き込み済みの範囲は変更されないため、ファイルからの読み取りはロックの外で行う
+        readFully(source, ByteBuffer.wrap(b, off, n), pos);
+        return n;
+    }
+
+    private synchronized long available(final long pos) {
+        return count - pos;
+    }
+
+    private static void readFully(final FileChannel source, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int n = source.read(buffer, offset);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            offset += n;
+        }
+    }
+
+    private class SpillStream extends InputStream {
+
+        private long pos;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = SpillSink.this.read(pos, b, off, len);
+            if (n > 0) {
+                pos += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(SpillSink.this.available(pos), Integer.MAX_VALUE);
+        }
+    }
+}
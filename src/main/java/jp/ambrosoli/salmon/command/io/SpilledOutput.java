@@ -0,0 +1,59 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * <p>
+ * 一定のサイズを超えた時点で一時ファイルに退避されるコマンドの出力を表すインタフェースです。
+ * </p>
+ *
+ * <p>
+ * {@link OutputSinks#spill(int)}で生成した{@link OutputSink}はこのインタフェースを実装します。
+ * 一時ファイルは{@link #release()}または{@link jp.ambrosoli.salmon.command.CommandState#close()}で削除されます。
+ * </p>
+ */
+public interface SpilledOutput extends CapturedOutput {
+
+    /**
+     * <p>
+     * 出力が一時ファイルに退避されているかどうかを返します。
+     * </p>
+     *
+     * @return 一時ファイルに退避されている場合{@code true}、メモリ上に保持している場合{@code false}
+     */
+    boolean isSpilled();
+
+    /**
+     * <p>
+     * 出力を保持している一時ファイルのパスを返します。
+     * </p>
+     *
+     * <p>
+     * 出力をメモリ上に保持している場合は、その時点で一時ファイルに退避します。
+     * 返したファイルは{@link #release()}で削除されるため、それ以降も使用する場合はコピーしてください。
+     * </p>
+     *
+     * @return 一時ファイルのパス
+     * @throws IOException
+     *             一時ファイルへの退避に失敗した場合
+     */
+    Path toPath() throws IOException;
+
+    /**
+     * <p>
+     * 現時点で保持している出力を読み取り専用の{@link ByteBuffer}で返します。
+     * </p>
+     *
+     * <p>
+     * 一時ファイルに退避している場合は、ファイルをメモリにマップした{@link java.nio.MappedByteBuffer}を返します。
+     * </p>
+     *
+     * @return 保持している出力
+     * @throws IllegalStateException
+     *             出力が{@link Integer#MAX_VALUE}バイトを超える場合
+     */
+    @Override
+    ByteBuffer asByteBuffer();
+}
@@ -0,0 +1,121 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * 出力の末尾のみを固定サイズのリングバッファに保持する{@link OutputSink}です。
+ * </p>
+ *
+ * <p>
+ * 保持するバイト数は{@code maxBytes}を超えません。{@code maxLines}を指定した場合は、読み取りの時点で末尾の{@code maxLines}行に切り詰めます。
+ * </p>
+ */
+class TailSink implements OutputSink, CapturedOutput {
+
+    private static final byte LF = '\n';
+
+    private final byte[] ring;
+    private final int maxLines;
+    private int head;
+    private int size;
+    private boolean closed;
+
+    TailSink(final int maxBytes, final int maxLines) {
+        ring = new byte[maxBytes];
+        this.maxLines = maxLines;
+    }
+
+    @Override
+    public synchronized void write(final ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (length >= ring.length) {
+            // リングバッファに収まらない部分は読み捨てる
+            buffer.position(buffer.limit() - ring.length);
+            buffer.get(ring, 0, ring.length);
+            head = 0;
+            size = ring.length;
+            return;
+        }
+        int first = Math.min(length, ring.length - head);
+        buffer.get(ring, head, first);
+        buffer.get(ring, 0, length - first);
+        head = (head + length) % ring.length;
+        size = Math.min(ring.length, size + length);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    @Override
+    public InputStream openStream() {
+        synchronized (this) {
+            try {
+                while (!closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException());
+            }
+        }
+        return new ByteArrayInputStream(toByteArray());
+    }
+
+    @Override
+    public synchronized byte[] toByteArray() {
+        int from = lineStart();
+        byte[] bytes = new byte[size - from];
+        int start = (head - size + from + ring.length) % ring.length;
+        int first = Math.min(bytes.length, ring.length - start);
+        System.arraycopy(ring, start, bytes, 0, first);
+        System.arraycopy(ring, 0, bytes, first, bytes.length - first);
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * {@link #toByteArray()}と{@link #openStream()}が返す出力のバイト数を返します。
+     * </p>
+     *
+     * <p>
+     * {@code maxLines}を指定した場合は、末尾の{@code maxLines}行に切り詰めた後のバイト数です。
+     * </p>
+     */
+    @Override
+    public synchronized int size() {
+        return size - lineStart();
+    }
+
+    /**
+     * <p>
+     * 保持している出力のうち、末尾の{@code maxLines}行が始まる位置を返します。
+     * </p>
+     */
+    private int lineStart() {
+        if (maxLines == Integer.MAX_VALUE) {
+            return 0;
+        }
+        int start = (head - size + ring.length) % ring.length;
+        // 末尾の改行は最終行の終端として扱う
+        int end = size > 0 && byteAt(start, size - 1) == LF ? size - 1 : size;
+        int lines = 0;
+        for (int i = end - 1; i >= 0; i--) {
+            if (byteAt(start, i) == LF && ++lines == maxLines) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private byte byteAt(final int start, final int index) {
+        return ring[(start + index) % ring.length];
+    }
+}
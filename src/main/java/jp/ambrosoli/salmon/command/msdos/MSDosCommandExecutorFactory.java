@@ -6,6 +6,11 @@ import jp.ambrosoli.salmon.utils.PlatformUtil;
 
 public class MSDosCommandExecutorFactory implements CommandExecutorFactory {
 
+    @Override
+    public String getName() {
+        return "msdos"; //$NON-NLS-1$
+    }
+
     @Override
     public boolean isSupported() {
         return PlatformUtil.isWindows();
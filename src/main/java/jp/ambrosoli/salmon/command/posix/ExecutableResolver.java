@@ -0,0 +1,167 @@
+package jp.ambrosoli.salmon.command.posix;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * コマンド名を環境変数{@code PATH}から検索し、実行ファイルの絶対パスに解決します。
+ * </p>
+ *
+ * <p>
+ * 解決した結果は{@code PATH}の値ごとにキャッシュします。キャッシュした結果は、検索したディレクトリの最終更新日時が変わった時点で破棄します。
+ * 実行ファイルが追加または削除されるとディレクトリの最終更新日時が変わるため、再検索が必要な場合だけ{@code PATH}を走査します。
+ * </p>
+ *
+ * <p>
+ * {@code /}を含むコマンド名と、相対パスや空の要素を含む{@code PATH}は作業ディレクトリによって結果が変わるため解決しません。
+ * 実行ファイルが見つからない場合もコマンド名をそのまま返し、JDKの検索に任せます。
+ * </p>
+ *
+ * <p>
+ * このクラスはスレッドセーフです。
+ * </p>
+ */
+final class ExecutableResolver {
+
+    private static final int MAX_SEARCH_PATHS = 64;
+
+    private static class Holder {
+        private static final ExecutableResolver INSTANCE = new ExecutableResolver();
+    }
+
+    private final ConcurrentMap<String, SearchPath> searchPaths = new ConcurrentHashMap<>();
+
+    ExecutableResolver() {
+    }
+
+    static ExecutableResolver getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * <p>
+     * コマンド名を実行ファイルの絶対パスに解決します。
+     * </p>
+     *
+     * @param command
+     *            コマンド名
+     * @param path
+     *            検索する{@code PATH}の値
+     * @return 実行ファイルの絶対パス。解決できない場合は{@code command}
+     */
+    String resolve(final String command, final String path) {
+        if (command == null || command.isEmpty() || command.indexOf('/') >= 0 || path == null) {
+            return command;
+        }
+        SearchPath searchPath = searchPaths.get(path);
+        if (searchPath == null) {
+            if (searchPaths.size() >= MAX_SEARCH_PATHS) {
+                // 環境変数をコマンドごとに変えている場合に際限なく増えないよう、上限に達した時点で破棄する
+                searchPaths.clear();
+            }
+            searchPath = searchPaths.computeIfAbsent(path, SearchPath::parse);
+        }
+        try {
+            Path executable = searchPath.resolve(command);
+            return executable != null ? executable.toString() : command;
+        } catch (InvalidPathException e) {
+            return command;
+        }
+    }
+
+    private static FileTime lastModified(final Path directory) {
+        try {
+            return Files.getLastModifiedTime(directory);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class SearchPath {
+
+        private final Path[] directories;
+        private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<>();
+
+        private SearchPath(final Path[] directories) {
+            this.directories = directories;
+        }
+
+        static SearchPath parse(final String path) {
+            List<Path> directories = new ArrayList<>();
+            for (String element : path.split(File.pathSeparator, -1)) {
+                Path directory = element.isEmpty() ? null : toPath(element);
+                if (directory == null || !directory.isAbsolute()) {
+                    return new SearchPath(null);
+                }
+                directories.add(directory);
+            }
+            return new SearchPath(directories.toArray(new Path[directories.size()]));
+        }
+
+        private static Path toPath(final String element) {
+            try {
+                return Paths.get(element);
+            } catch (InvalidPathException e) {
+                return null;
+            }
+        }
+
+        Path resolve(final String command) {
+            if (directories == null) {
+                return null;
+            }
+            Resolution resolution = resolutions.get(command);
+            if (resolution == null || !resolution.isValid(directories)) {
+                resolution = search(command);
+                resolutions.put(command, resolution);
+            }
+            return resolution.executable;
+        }
+
+        private Resolution search(final String command) {
+            FileTime[] lastModified = new FileTime[directories.length];
+            for (int i = 0; i < directories.length; i++) {
+                // 検索中に実行ファイルが追加された場合に再検索されるよう、最終更新日時は検索の前に取得する
+                lastModified[i] = lastModified(directories[i]);
+                Path candidate = directories[i].resolve(command);
+                if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                    return new Resolution(candidate, Arrays.copyOf(lastModified, i + 1));
+                }
+            }
+            return new Resolution(null, lastModified);
+        }
+    }
+
+    private static class Resolution {
+
+        private final Path executable;
+        private final FileTime[] lastModified;
+
+        Resolution(final Path executable, final FileTime[] lastModified) {
+            this.executable = executable;
+            this.lastModified = lastModified;
+        }
+
+        boolean isValid(final Path[] directories) {
+            // 見つかったディレクトリより後ろのディレクトリは結果に影響しないため確認しない
+            for (int i = 0; i < lastModified.length; i++) {
+                if (!Objects.equals(lastModified[i], lastModified(directories[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package jp.ambrosoli.salmon.command.posix;
+
+import java.util.Locale;
+
+import jp.ambrosoli.salmon.utils.PlatformUtil;
+import jp.ambrosoli.salmon.utils.StringUtil;
+
+/**
+ * <p>
+ * POSIX環境でJDKが子プロセスを起動する方式を表す列挙型です。
+ * </p>
+ *
+ * <p>
+ * JDKは最初のプロセスを起動する時点でシステムプロパティ{@value #PROPERTY_NAME}を一度だけ読み込むため、
+ * この設定はプロセスを起動する前に適用する必要があります。
+ * </p>
+ *
+ * @author willard379
+ * @since 0.1.0
+ *
+ */
+public enum LaunchMechanism {
+
+    /**
+     * <p>
+     * posix_spawn(3)で子プロセスを起動します。
+     * </p>
+     */
+    POSIX_SPAWN,
+
+    /**
+     * <p>
+     * vfork(2)で子プロセスを起動します。親プロセスのメモリ空間をコピーしないため、ヒープの大きなJVMで高速です。
+     * </p>
+     */
+    VFORK,
+
+    /**
+     * <p>
+     * fork(2)で子プロセスを起動します。親プロセスのメモリ空間の大きさに比例して起動コストが増加します。
+     * </p>
+     */
+    FORK;
+
+    /**
+     * <p>
+     * JDKが起動方式を読み込むシステムプロパティ名です。
+     * </p>
+     */
+    public static final String PROPERTY_NAME = "jdk.lang.Process.launchMechanism"; //$NON-NLS-1$
+
+    /**
+     * <p>
+     * 実行中のJDKとOSの組み合わせでこの起動方式が使用できるかどうかを返します。
+     * </p>
+     *
+     * <p>
+     * 使用できない起動方式をJDKに指定すると、以降のプロセス起動がすべて失敗するため、 設定を適用する前にこのメソッドで確認します。
+     * </p>
+     *
+     * @return 使用できる場合{@code true}、その他の場合{@code false}
+     */
+    public boolean isSupported() {
+        if (PlatformUtil.isWindows()) {
+            return false;
+        }
+        if (PlatformUtil.isLinux()) {
+            // Java 8のLinux版JDKはposix_spawnに対応していない
+            return this != POSIX_SPAWN || !PlatformUtil.isJava8();
+        }
+        // Linux以外のPOSIX環境ではvforkは使用できない
+        return this != VFORK;
+    }
+
+    /**
+     * <p>
+     * この起動方式をJDKに適用します。
+     * </p>
+     *
+     * <p>
+     * システムプロパティ{@value #PROPERTY_NAME}がすでに指定されている場合や、この起動方式が使用できない場合は何もしません。
+     * </p>
+     *
+     * @return 起動方式を適用した場合{@code true}、その他の場合{@code false}
+     */
+    public boolean apply() {
+        if (System.getProperty(PROPERTY_NAME) != null || !isSupported()) {
+            return false;
+        }
+        System.setProperty(PROPERTY_NAME, name());
+        return true;
+    }
+
+    /**
+     * <p>
+     * 文字列を起動方式に変換します。大文字と小文字は区別しません。
+     * </p>
+     *
+     * @param value
+     *            起動方式を表す文字列
+     * @return 起動方式。文字列がnull、空文字、または不正な値の場合は{@code null}
+     */
+    public static LaunchMechanism parse(final String value) {
+        if (StringUtil.isEmpty(value)) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package jp.ambrosoli.salmon.command.posix;
+
+import java.util.List;
+
+import jp.ambrosoli.salmon.command.CommandParameter;
+import jp.ambrosoli.salmon.command.internal.AbstractCommandExecutor;
+
+class PosixCommandExecutor extends AbstractCommandExecutor {
+
+    private static final String PATH = "PATH"; //$NON-NLS-1$
+
+    private final ExecutableResolver resolver;
+
+    PosixCommandExecutor(final LaunchMechanism launchMechanism, final ExecutableResolver resolver) {
+        if (launchMechanism != null) {
+            launchMechanism.apply();
+        }
+        this.resolver = resolver;
+    }
+
+    /**
+     * <p>
+     * コマンド名を{@link ExecutableResolver}で実行ファイルの絶対パスに解決した{@link ProcessBuilder}を生成します。
+     * </p>
+     *
+     * <p>
+     * 環境変数や環境変数の雛形を設定している場合は、設定後の{@code PATH}で検索します。
+     * </p>
+     */
+    @Override
+    protected ProcessBuilder createProcessBuilder(final CommandParameter parameter) {
+        ProcessBuilder builder = super.createProcessBuilder(parameter);
+        if (resolver != null) {
+            // 環境変数を設定していない場合にenvironment()で環境変数をコピーしないよう、現在の値を参照する
+            String path = parameter.getEnvironment() != null || parameter.getEnvironmentTemplate() != null
+                    ? builder.environment().get(PATH) : System.getenv(PATH);
+            List<String> command = builder.command();
+            command.set(0, resolver.resolve(command.get(0), path));
+        }
+        return builder;
+    }
+
+}
@@ -0,0 +1,26 @@
+package jp.ambrosoli.salmon.command.posix;
+
+import jp.ambrosoli.salmon.command.CommandExecutor;
+import jp.ambrosoli.salmon.command.CommandExecutorFactory;
+import jp.ambrosoli.salmon.config.SalmonConfig;
+import jp.ambrosoli.salmon.utils.PlatformUtil;
+
+public class PosixCommandExecutorFactory implements CommandExecutorFactory {
+
+    @Override
+    public String getName() {
+        return "posix"; //$NON-NLS-1$
+    }
+
+    @Override
+    public boolean isSupported() {
+        return PlatformUtil.isUnix();
+    }
+
+    @Override
+    public CommandExecutor create() {
+        ExecutableResolver resolver = SalmonConfig.isExecutableCache() ? ExecutableResolver.getInstance() : null;
+        return new PosixCommandExecutor(SalmonConfig.getLaunchMechanism(), resolver);
+    }
+
+}
@@ -4,32 +4,149 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
+import jp.ambrosoli.salmon.command.RejectionPolicy;
+import jp.ambrosoli.salmon.command.posix.LaunchMechanism;
+
 public class SalmonConfig {
 
     private static final String PROP_NAME = "salmon.properties"; //$NON-NLS-1$
 
-    private static Properties prop;
+    private static volatile Properties prop;
 
-    static void initialize() {
-        prop = new Properties();
+    static synchronized void initialize() {
+        Properties properties = new Properties();
         try (InputStream stream = SalmonConfig.class.getClassLoader().getResourceAsStream(PROP_NAME)) {
             if (stream != null) {
-                prop.load(stream);
+                properties.load(stream);
             } else {
-                loadDefault();
+                loadDefault(properties);
             }
         } catch (IOException e) {
             // do nothing
         }
+        prop = properties;
+    }
+
+    /**
+     * <p>
+     * 設定値を返します。
+     * </p>
+     *
+     * <p>
+     * salmon.propertiesは最初に設定値を参照した時点で読み込みます。設定値を参照しないアプリケーションでは読み込みません。
+     * </p>
+     */
+    private static Properties properties() {
+        Properties properties = prop;
+        if (properties == null) {
+            synchronized (SalmonConfig.class) {
+                if (prop == null) {
+                    initialize();
+                }
+                properties = prop;
+            }
+        }
+        return properties;
     }
 
     public static boolean isAutoMSDos() {
-        return prop != null && Boolean.valueOf(prop.getProperty("auto.msdos", Boolean.FALSE.toString())).booleanValue(); //$NON-NLS-1$
+        return Boolean.valueOf(properties().getProperty("auto.msdos", Boolean.FALSE.toString())).booleanValue(); //$NON-NLS-1$
+    }
+
+    public static LaunchMechanism getLaunchMechanism() {
+        return LaunchMechanism.parse(properties().getProperty("posix.launch.mechanism")); //$NON-NLS-1$
+    }
+
+    public static boolean isExecutableCache() {
+        return Boolean.valueOf(properties().getProperty("posix.executable.cache", Boolean.TRUE.toString())).booleanValue(); //$NON-NLS-1$
+    }
+
+    public static boolean isAsyncVirtualThread() {
+        return Boolean.valueOf(properties().getProperty("async.virtual.thread", Boolean.FALSE.toString())).booleanValue(); //$NON-NLS-1$
+    }
+
+    public static int getAsyncPoolCoreSize() {
+        return getPositiveInt("async.pool.core.size", 64); //$NON-NLS-1$
+    }
+
+    public static int getAsyncPoolMaxSize() {
+        return getPositiveInt("async.pool.max.size", 256); //$NON-NLS-1$
+    }
+
+    public static int getAsyncPoolQueueCapacity() {
+        return getPositiveInt("async.pool.queue.capacity", 1024); //$NON-NLS-1$
+    }
+
+    public static long getAsyncPoolKeepAliveMillis() {
+        return getPositiveInt("async.pool.keepalive", 60000); //$NON-NLS-1$
+    }
+
+    public static RejectionPolicy getAsyncPoolRejectionPolicy() {
+        String value = properties().getProperty("async.pool.rejection.policy"); //$NON-NLS-1$
+        for (RejectionPolicy policy : RejectionPolicy.values()) {
+            if (policy.name().equalsIgnoreCase(value != null ? value.trim() : null)) {
+                return policy;
+            }
+        }
+        return RejectionPolicy.CALLER_RUNS;
+    }
+
+    public static long getReaperPollIntervalMillis() {
+        return getPositiveInt("reaper.poll.interval", 50); //$NON-NLS-1$
+    }
+
+    public static long getTimeoutTickMillis() {
+        return getPositiveInt("timeout.tick", 10); //$NON-NLS-1$
+    }
+
+    public static int getTimeoutWheelSize() {
+        return getPositiveInt("timeout.wheel.size", 512); //$NON-NLS-1$
+    }
+
+    public static int getPumpBufferSize() {
+        return getPositiveInt("pump.buffer.size", 8192); //$NON-NLS-1$
+    }
+
+    public static boolean isPumpMultiplexed() {
+        return Boolean.valueOf(properties().getProperty("pump.multiplexed", Boolean.FALSE.toString())).booleanValue(); //$NON-NLS-1$
+    }
+
+    public static int getPumpThreads() {
+        return getPositiveInt("pump.threads", 2); //$NON-NLS-1$
+    }
+
+    public static long getPumpDrainTimeoutMillis() {
+        return getPositiveInt("pump.drain.timeout", 1000); //$NON-NLS-1$
+    }
+
+    public static long getPumpPollIntervalMillis() {
+        return getPositiveInt("pump.poll.interval", 10); //$NON-NLS-1$
+    }
+
+    public static int getIoBufferSize() {
+        return getPositiveInt("io.buffer.size", 8192); //$NON-NLS-1$
+    }
+
+    public static long getHandlerSlowThresholdMillis() {
+        return getPositiveInt("handler.slow.threshold", 1000); //$NON-NLS-1$
+    }
+
+    private static int getPositiveInt(final String key, final int defaultValue) {
+        String value = properties().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int intValue = Integer.parseInt(value.trim());
+            return intValue > 0 ? intValue : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
-    private static void loadDefault() throws IOException {
+    private static void loadDefault(final Properties properties) throws IOException {
         try (InputStream defaultStream = SalmonConfig.class.getResourceAsStream(PROP_NAME)) {
-            prop.load(defaultStream);
+            properties.load(defaultStream);
         }
     }
 }
@@ -1,8 +1,15 @@
 package jp.ambrosoli.salmon.config;
 
-import jp.ambrosoli.salmon.command.CommandExecutorRegistry;
-import jp.ambrosoli.salmon.command.msdos.MSDosCommandExecutorFactory;
-
+/**
+ * <p>
+ * Salmonの設定を読み込みます。
+ * </p>
+ *
+ * <p>
+ * 設定値と{@link jp.ambrosoli.salmon.command.CommandExecutorFactory}は最初に使用した時点で読み込まれるため、
+ * このクラスを呼び出す必要はありません。起動時にまとめて読み込んでおく場合にのみ{@link #initialize()}を呼び出してください。
+ * </p>
+ */
 public class SalmonInitializer {
 
     private static SalmonInitializer initializer = new SalmonInitializer();
@@ -16,16 +23,11 @@ public class SalmonInitializer {
         initializer.runOnlyOnce();
     }
 
-    private void runOnlyOnce() {
+    private synchronized void runOnlyOnce() {
         if (initialized) {
             return;
         }
         SalmonConfig.initialize();
-        registCommandExecutorFactory();
         initialized = true;
     }
-
-    private void registCommandExecutorFactory() {
-        CommandExecutorRegistry.registerFactory(new MSDosCommandExecutorFactory());
-    }
 }
@@ -0,0 +1,80 @@
+package jp.ambrosoli.salmon.event;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * イベントの処理を指定した{@link Executor}で、受け付けた順に1件ずつ実行する{@link Executor}です。
+ * </p>
+ *
+ * <p>
+ * コマンドごとにインスタンスを生成することで、同じコマンドのイベントは順番通りに処理しつつ、
+ * 異なるコマンドのイベントは並行して処理できます。実行を待っているイベントの件数は{@link HandlerMetrics}で集計されます。
+ * </p>
+ *
+ * <p>
+ * {@link Executor}が実行を拒否した場合は、イベントを失わないよう呼び出し元のスレッドで処理します。
+ * </p>
+ */
+public final class EventDispatcher implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final HandlerMetrics metrics = HandlerMetrics.getInstance();
+
+    /**
+     * <p>
+     * イベントを処理する{@link Executor}を指定してインスタンスを生成します。
+     * </p>
+     *
+     * @param executor
+     *            イベントを処理する{@link Executor}
+     */
+    public EventDispatcher(final Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        metrics.enqueued();
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        // 処理中のスレッドが終了した直後に追加されたイベントも取りこぼさないよう、キューが空になるまで確認する
+        while (!tasks.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+                return;
+            } catch (RejectedExecutionException e) {
+                drainTasks();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            drainTasks();
+        } finally {
+            schedule();
+        }
+    }
+
+    private void drainTasks() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                metrics.dequeued();
+                task.run();
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+}
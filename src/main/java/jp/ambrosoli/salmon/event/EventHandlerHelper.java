@@ -5,13 +5,17 @@ import java.util.List;
 public class EventHandlerHelper {
 
     public static <T> void fireEvent(final List<EventHandler<T>> handlers, final T target) {
+        HandlerMetrics metrics = HandlerMetrics.getInstance();
         Exception thrown = null;
         for (EventHandler<T> handler : handlers) {
+            long start = System.nanoTime();
             try {
                 handler.handle(target);
             } catch (Exception e) {
                 // 例外が発生しても最後までイベントハンドラの処理を続行します。
                 thrown = e;
+            } finally {
+                metrics.recordHandler(System.nanoTime() - start);
             }
         }
         // 最後に発生した例外をスローします
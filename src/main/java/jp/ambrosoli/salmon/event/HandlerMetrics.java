@@ -0,0 +1,132 @@
+package jp.ambrosoli.salmon.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import jp.ambrosoli.salmon.config.SalmonConfig;
+
+/**
+ * <p>
+ * イベントハンドラの実行状況を集計するクラスです。
+ * </p>
+ *
+ * <p>
+ * {@link EventHandlerHelper#fireEvent(java.util.List, Object)}で呼び出した全てのイベントハンドラの実行時間と、
+ * {@link EventDispatcher}で実行を待っているイベントの件数を集計します。
+ * salmon.propertiesの{@code handler.slow.threshold}(ミリ秒)以上かかったイベントハンドラは、遅いイベントハンドラとして数えます。
+ * </p>
+ *
+ * <p>
+ * 集計はJVM全体で1つのインスタンスで行い、値はリセットされません。
+ * </p>
+ */
+public final class HandlerMetrics {
+
+    private final long slowThresholdNanos;
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private HandlerMetrics() {
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(SalmonConfig.getHandlerSlowThresholdMillis());
+    }
+
+    /**
+     * <p>
+     * {@link HandlerMetrics}のインスタンスを返します。
+     * </p>
+     *
+     * @return {@link HandlerMetrics}
+     */
+    public static HandlerMetrics getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * <p>
+     * 呼び出したイベントハンドラの件数を返します。
+     * </p>
+     *
+     * @return 呼び出したイベントハンドラの件数
+     */
+    public long getHandledCount() {
+        return handled.sum();
+    }
+
+    /**
+     * <p>
+     * 実行に{@code handler.slow.threshold}以上かかったイベントハンドラの件数を返します。
+     * </p>
+     *
+     * @return 遅いイベントハンドラの件数
+     */
+    public long getSlowHandlerCount() {
+        return slow.sum();
+    }
+
+    /**
+     * <p>
+     * 最も時間のかかったイベントハンドラの実行時間を返します。
+     * </p>
+     *
+     * @param unit
+     *            実行時間の単位
+     * @return 最も時間のかかったイベントハンドラの実行時間
+     */
+    public long getMaxHandlerTime(final TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * <p>
+     * {@link EventDispatcher}で実行を待っているイベントの件数を返します。
+     * </p>
+     *
+     * @return 実行を待っているイベントの件数
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * <p>
+     * {@link EventDispatcher}で実行を待っていたイベントの件数の最大値を返します。
+     * </p>
+     *
+     * @return 実行を待っていたイベントの件数の最大値
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    void recordHandler(final long elapsedNanos) {
+        handled.increment();
+        if (elapsedNanos >= slowThresholdNanos) {
+            slow.increment();
+        }
+        long max = maxNanos.get();
+        while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    void enqueued() {
+        int depth = queueDepth.incrementAndGet();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    void dequeued() {
+        queueDepth.decrementAndGet();
+    }
+
+    private static class Holder {
+        private static final HandlerMetrics INSTANCE = new HandlerMetrics();
+    }
+}
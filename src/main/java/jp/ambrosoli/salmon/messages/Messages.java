@@ -3,16 +3,27 @@ package jp.ambrosoli.salmon.messages;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
+/**
+ * <p>
+ * メッセージを取得します。
+ * </p>
+ *
+ * <p>
+ * メッセージのリソースバンドルは、最初にメッセージを取得した時点で読み込みます。
+ * </p>
+ */
 public class Messages {
 
-    private static final ResourceBundle resource = ResourceBundle.getBundle(getBaseName());
+    private static class Holder {
+        private static final ResourceBundle RESOURCE = ResourceBundle.getBundle(getBaseName());
+    }
 
     public static String getString(final String key) {
-        return resource.getString(key);
+        return Holder.RESOURCE.getString(key);
     }
 
     public static String getString(final String key, final Object... args) {
-        String message = resource.getString(key);
+        String message = Holder.RESOURCE.getString(key);
         return MessageFormat.format(message, args);
     }
 
@@ -0,0 +1,74 @@
+package jp.ambrosoli.salmon.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import jp.ambrosoli.salmon.config.SalmonConfig;
+
+/**
+ * <p>
+ * 入出力に使用するバッファをスレッドごとに再利用するプールです。
+ * </p>
+ *
+ * <p>
+ * バッファのサイズはsalmon.propertiesの{@code io.buffer.size}の値(バイト)で、{@value #MIN_BUFFER_SIZE}バイト未満の場合は
+ * {@value #MIN_BUFFER_SIZE}バイトです。各スレッドが保持するバッファは{@value #MAX_POOLED_PER_THREAD}個までで、
+ * それを超えて返却されたバッファは破棄されます。
+ * {@link java.io.InputStream}と{@link java.io.OutputStream}は配列を必要とするため、バッファはヒープ上に確保します。
+ * </p>
+ */
+final class BufferPool {
+
+    private static final int MAX_POOLED_PER_THREAD = 2;
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    private static class Holder {
+        // デコード中の文字がバッファに収まるよう、最小のサイズを保証する
+        private static final int BUFFER_SIZE = Math.max(MIN_BUFFER_SIZE, SalmonConfig.getIoBufferSize());
+    }
+
+    private static final ThreadLocal<Deque<ByteBuffer>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private BufferPool() {
+    }
+
+    /**
+     * <p>
+     * バッファを取得します。
+     * </p>
+     *
+     * <p>
+     * 使用後は{@link #release(ByteBuffer)}で返却してください。返却しなかった場合でも、バッファはガベージコレクションで回収されます。
+     * </p>
+     *
+     * @return 空のバッファ
+     */
+    static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.get().pollFirst();
+        if (buffer == null) {
+            return ByteBuffer.allocate(Holder.BUFFER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * <p>
+     * {@link #acquire()}で取得したバッファを返却します。
+     * </p>
+     *
+     * @param buffer
+     *            返却するバッファ
+     */
+    static void release(final ByteBuffer buffer) {
+        Deque<ByteBuffer> pool = POOL.get();
+        if (pool.size() < MAX_POOLED_PER_THREAD && buffer.capacity() == Holder.BUFFER_SIZE) {
+            pool.addFirst(buffer);
+        }
+    }
+
+    static int getBufferSize() {
+        return Holder.BUFFER_SIZE;
+    }
+}
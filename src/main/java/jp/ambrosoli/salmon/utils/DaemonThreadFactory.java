@@ -0,0 +1,42 @@
+package jp.ambrosoli.salmon.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * 名前付きのデーモンスレッドを生成する{@link ThreadFactory}です。
+ * </p>
+ *
+ * <p>
+ * 生成されるスレッドの名前は{@code プレフィックス-連番}の形式になります。
+ * </p>
+ *
+ * @author willard379
+ * @since 0.1.0
+ *
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * <p>
+     * スレッド名のプレフィックスを指定してインスタンスを生成します。
+     * </p>
+     *
+     * @param prefix
+     *            スレッド名のプレフィックス
+     */
+    public DaemonThreadFactory(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet()); //$NON-NLS-1$
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -1,19 +1,29 @@
 package jp.ambrosoli.salmon.utils;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 
 public class IOUtil {
 
     public static final Charset MS932 = Charset.forName("ms932"); //$NON-NLS-1$
 
+    private static final int MIN_BYTES = 16;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     public static void closeSilently(final Closeable stream) {
         if (stream == null) {
             return;
@@ -37,14 +47,78 @@ public class IOUtil {
     }
 
     public static String readAll(final InputStream stream, final Charset charset) throws IOException {
-        try (InputStream in = stream; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            byte[] buff = new byte[1024];
-            int size = 0;
-            while ((size = in.read(buff)) > 0) {
-                out.write(buff, 0, size);
+        return readAll(stream, charset, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * <p>
+     * ストリームの先頭から最大{@code maxBytes}バイトを読み取り、文字列にデコードします。
+     * </p>
+     *
+     * <p>
+     * {@code maxBytes}バイトを超える部分は読み取らずにストリームを閉じます。途中で切れた末尾の文字は取り除かれます。
+     * </p>
+     *
+     * @param stream
+     *            読み取るストリーム
+     * @param charset
+     *            文字セット、{@code null}の場合はデフォルトの文字セット
+     * @param maxBytes
+     *            読み取る最大のバイト数
+     * @return デコードした文字列
+     * @throws IOException
+     *             読み取りに失敗した場合
+     */
+    public static String readAll(final InputStream stream, final Charset charset, final long maxBytes)
+            throws IOException {
+        return readAll(stream, charset, 0, maxBytes);
+    }
+
+    /**
+     * <p>
+     * ストリームの先頭から最大{@code maxBytes}バイトを読み取り、文字列にデコードします。
+     * </p>
+     *
+     * <p>
+     * 読み取ったバイト列は1つの配列に保持し、終端に達した時点で{@link String#String(byte[], int, int, Charset)}でデコードします。
+     * {@code expectedSize}に読み取るバイト数の見込みを指定すると、配列を最初から必要な大きさで確保するため、配列の拡張によるコピーが発生しません。
+     * </p>
+     *
+     * @param stream
+     *            読み取るストリーム
+     * @param charset
+     *            文字セット、{@code null}の場合はデフォルトの文字セット
+     * @param expectedSize
+     *            読み取るバイト数の見込み、0以下の場合は{@link InputStream#available()}の値を使用します
+     * @param maxBytes
+     *            読み取る最大のバイト数
+     * @return デコードした文字列
+     * @throws IOException
+     *             読み取りに失敗した場合
+     */
+    public static String readAll(final InputStream stream, final Charset charset, final int expectedSize,
+            final long maxBytes) throws IOException {
+        Charset cs = charset != null ? charset : Charset.defaultCharset();
+        try (InputStream in = stream) {
+            long hint = Math.min(expectedSize > 0 ? expectedSize : in.available(), Math.max(0L, maxBytes));
+            // 見込みどおりの大きさで終端を検出できるよう、1バイト余分に確保する
+            byte[] bytes = new byte[(int) Math.min(MAX_ARRAY_SIZE, Math.max(MIN_BYTES, hint + 1))];
+            int length = 0;
+            long remaining = maxBytes;
+            while (remaining > 0L) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_ARRAY_SIZE, bytes.length * 2L));
+                }
+                int n = in.read(bytes, length, (int) Math.min(bytes.length - length, remaining));
+                if (n < 0) {
+                    return new String(bytes, 0, length, cs);
+                }
+                length += n;
+                remaining -= n;
             }
-            String charsetStr = charset != null ? charset.toString() : Charset.defaultCharset().toString();
-            return out.toString(charsetStr);
+            // 上限に達した場合は、終端かどうかを確かめるための読み取りでブロックしないよう、
+            // 終端に達していなくても切り詰めたものとして扱う
+            return decodeTruncated(bytes, length, cs);
         }
     }
 
@@ -60,12 +134,37 @@ public class IOUtil {
         }
     }
 
+    /**
+     * <p>
+     * {@code source}の内容を終端まで{@code dest}に書き込み、両方のストリームを閉じます。
+     * </p>
+     *
+     * <p>
+     * 両方がファイルのストリームの場合は{@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * で転送するため、内容はJavaのヒープを経由しません。その他の場合はスレッドごとに再利用するバッファを使用してコピーします。
+     * </p>
+     *
+     * @param source
+     *            コピー元のストリーム
+     * @param dest
+     *            コピー先のストリーム
+     * @throws IOException
+     *             読み取りまたは書き込みに失敗した場合
+     */
     public static void copy(final InputStream source, final OutputStream dest) throws IOException {
-        byte[] buff = new byte[8192];
-        int size = 0;
         try {
-            while ((size = source.read(buff)) != -1) {
-                dest.write(buff, 0, size);
+            if (source instanceof FileInputStream && dest instanceof FileOutputStream) {
+                transfer(((FileInputStream) source).getChannel(), ((FileOutputStream) dest).getChannel());
+            }
+            ByteBuffer buffer = BufferPool.acquire();
+            try {
+                byte[] buff = buffer.array();
+                int size = 0;
+                while ((size = source.read(buff)) != -1) {
+                    dest.write(buff, 0, size);
+                }
+            } finally {
+                BufferPool.release(buffer);
             }
         } finally {
             try {
@@ -84,4 +183,38 @@ public class IOUtil {
         }
     }
 
+    private static void transfer(final FileChannel source, final FileChannel dest) throws IOException {
+        long size = source.size();
+        if (size == 0L) {
+            // パイプなどのファイル以外は大きさが分からないため、通常のコピーで読み取る
+            return;
+        }
+        long position = source.position();
+        while (position < size) {
+            long n = source.transferTo(position, size - position, dest);
+            if (n <= 0L) {
+                break;
+            }
+            position += n;
+        }
+        // 転送中に追記された内容は通常のコピーで続きから読み取る
+        source.position(position);
+    }
+
+    /**
+     * <p>
+     * 上限で切り詰めたバイト列をデコードします。途中で切れた末尾の文字は取り除きます。
+     * </p>
+     */
+    private static String decodeTruncated(final byte[] bytes, final int length, final Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer
+                .allocate((int) Math.min(MAX_ARRAY_SIZE, (long) Math.ceil(length * (double) decoder.maxCharsPerByte())));
+        // 終端ではないものとしてデコードし、末尾の不完全なバイト列は読み残す
+        decoder.decode(ByteBuffer.wrap(bytes, 0, length), chars, false);
+        chars.flip();
+        return chars.toString();
+    }
+
 }
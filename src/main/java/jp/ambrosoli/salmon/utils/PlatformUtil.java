@@ -17,6 +17,16 @@ public class PlatformUtil {
         return !isWindows();
     }
 
+    public static boolean isLinux() {
+        String osName = cache.computeIfAbsent("os.name", System::getProperty); //$NON-NLS-1$
+        return osName.toLowerCase().contains("linux"); //$NON-NLS-1$
+    }
+
+    public static boolean isJava8() {
+        String version = cache.computeIfAbsent("java.specification.version", System::getProperty); //$NON-NLS-1$
+        return version.startsWith("1."); //$NON-NLS-1$
+    }
+
     public static String lineSeparator() {
         return cache.computeIfAbsent("line.separator", System::getProperty); //$NON-NLS-1$
     }
@@ -0,0 +1,97 @@
+package jp.ambrosoli.salmon.command.io;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.ambrosoli.salmon.messages.Messages;
+
+/**
+ * <p>
+ * コマンドの出力を{@link Flow.Publisher}として公開する{@link OutputSink}です。
+ * </p>
+ *
+ * <p>
+ * 購読者が要求した数だけ出力を{@link ByteBuffer}で通知します。要求がない間は{@link #isReady()}が{@code false}を返すため、
+ * プロセスの出力の読み取りが止まり、パイプのバッファが一杯になった時点でプロセスの書き込みもブロックします。
+ * これにより、購読者の処理が追いつかない場合でもメモリ上に出力が溜まりません。
+ * タイムアウトなどにより出力を終端まで読み取れなかった場合は{@link Flow.Subscriber#onError(Throwable)}を通知します。
+ * </p>
+ *
+ * <p>
+ * 購読者がいない間も出力の読み取りは止まるため、購読する前に同期的に実行するとプロセスが終了せず、
+ * {@link jp.ambrosoli.salmon.command.CommandBuilder#execute()}から戻りません。購読はコマンドの実行前に行うか、
+ * {@link jp.ambrosoli.salmon.command.CommandBuilder#executeAsync()}で実行してください。
+ * タイムアウトを設定している場合は、タイムアウトによりプロセスが強制終了されます。
+ * </p>
+ *
+ * <p>
+ * 購読できるのは1つの{@link Flow.Subscriber}のみです。購読者が購読を取り消した場合、以降の出力は読み捨てられます。
+ * </p>
+ *
+ * <p>
+ * このクラスはJava 9以降でのみ使用でき、マルチリリースJARの{@code META-INF/versions/9}にのみ格納されます。
+ * Java 8向けの対応するクラスはないため、Java 8では{@link DemandSink}を継承して使用してください。
+ * 要求の管理と通知の順序は{@link DemandSink}が行い、このクラスは{@link Flow}のインタフェースへの変換のみを行います。
+ * </p>
+ *
+ * <pre>
+ * OutputPublisher publisher = new OutputPublisher();
+ * publisher.subscribe(subscriber);
+ * command("cat").options("large.log").stdout(() -&gt; publisher).executeAsync();
+ * </pre>
+ */
+public class OutputPublisher extends DemandSink implements Flow.Publisher<ByteBuffer> {
+
+    private final AtomicReference<Flow.Subscriber<? super ByteBuffer>> subscriber = new AtomicReference<>();
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(final long n) {
+                    // do nothing
+                }
+
+                @Override
+                public void cancel() {
+                    // do nothing
+                }
+            });
+            subscriber.onError(new IllegalStateException(Messages.getString("OutputPublisher.error.subscribed"))); //$NON-NLS-1$
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(final long n) {
+                OutputPublisher.this.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                OutputPublisher.this.cancel();
+            }
+        });
+        start();
+    }
+
+    @Override
+    protected void onNext(final ByteBuffer buffer) {
+        subscriber.get().onNext(buffer);
+    }
+
+    @Override
+    protected void onError(final Throwable thrown) {
+        subscriber.get().onError(thrown);
+    }
+
+    @Override
+    protected void onComplete() {
+        subscriber.get().onComplete();
+    }
+}
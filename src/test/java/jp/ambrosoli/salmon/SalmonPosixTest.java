@@ -0,0 +1,1215 @@
+package jp.ambrosoli.salmon;
+
+import static jp.ambrosoli.salmon.Salmon.*;
+import static jp.ambrosoli.salmon.SalmonTestHelper.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.gen5.api.Assertions.*;
+import static org.junit.gen5.api.Assumptions.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.gen5.api.BeforeAll;
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.command.CommandBuilder;
+import jp.ambrosoli.salmon.command.CommandSpec;
+import jp.ambrosoli.salmon.command.CommandState;
+import jp.ambrosoli.salmon.command.EnvironmentTemplate;
+import jp.ambrosoli.salmon.command.cache.CommandResultCache;
+import jp.ambrosoli.salmon.command.io.DemandSink;
+import jp.ambrosoli.salmon.command.io.OutputSink;
+import jp.ambrosoli.salmon.command.io.OutputSinks;
+import jp.ambrosoli.salmon.command.io.SpilledOutput;
+import jp.ambrosoli.salmon.event.EventHandler;
+import jp.ambrosoli.salmon.event.EventHandlingException;
+import jp.ambrosoli.salmon.utils.IOUtil;
+import jp.ambrosoli.salmon.utils.StringUtil;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class SalmonPosixTest {
+
+    @BeforeAll
+    static void beforeAll() {
+        String osName = System.getProperty("os.name");
+        assumeFalse(osName.toLowerCase().contains("windows"));
+    }
+
+    @Test
+    void オプションなしでコマンドを実行する() throws Exception {
+        // Exercise
+        CommandState actual = command("pwd").execute();
+
+        // Verify
+        verifySucceeded(actual);
+        String expected = new File(".").getCanonicalPath();
+        assertThat(StringUtil.chomp(IOUtil.readAll(actual.getStdout())), is(expected));
+    }
+
+    @Test
+    void オプションを複数配列で指定してコマンドを実行する() throws Exception {
+        // Exercise
+        CommandState actual = command("echo").options("hoge", "foo", "bar").execute();
+
+        // Verify
+        verifySucceeded(actual);
+        assertThat(StringUtil.chomp(IOUtil.readAll(actual.getStdout())), is("hoge foo bar"));
+    }
+
+    @Test
+    void コマンドが正常終了() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> failed = verifyableEmptyHandler();
+        EventHandler<CommandState> error = verifyableEmptyHandler();
+        EventHandler<CommandState> cancelled = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("true").onSucceeded(succeeded).onFailed(failed).onError(error)
+                .onCancelled(cancelled).onDone(done).execute();
+
+        // Verify
+        verifySucceeded(state);
+        verifySucceededHandled(succeeded, failed, error, cancelled, done);
+    }
+
+    @Test
+    void コマンドが失敗() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> failed = verifyableEmptyHandler();
+        EventHandler<CommandState> error = verifyableEmptyHandler();
+        EventHandler<CommandState> cancelled = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("sh").options("-c", "exit 1").onSucceeded(succeeded).onFailed(failed)
+                .onError(error).onCancelled(cancelled).onDone(done).execute();
+
+        // Verify
+        verifyFailed(state);
+        verifyFailedHandled(succeeded, failed, error, cancelled, done);
+        assertThat(state.getExitCode(), is(1));
+    }
+
+    @Test
+    void コマンドがエラー終了() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> failed = verifyableEmptyHandler();
+        EventHandler<CommandState> error = verifyableHandler(SalmonTestHelper::verifyError);
+        EventHandler<CommandState> cancelled = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        assertThrows(IOException.class, () -> {
+            command("存在しないコマンド").onSucceeded(succeeded).onFailed(failed).onError(error).onCancelled(cancelled)
+                    .onDone(done).execute();
+        });
+
+        // Verify
+        verifyErrorHandled(succeeded, failed, error, cancelled, done);
+    }
+
+    @Test
+    void コマンドがキャンセル終了() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> failed = verifyableEmptyHandler();
+        EventHandler<CommandState> error = verifyableEmptyHandler();
+        EventHandler<CommandState> cancelled = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("sleep").options("5").timeout(200L, TimeUnit.MILLISECONDS)
+                .onSucceeded(succeeded).onFailed(failed).onError(error).onCancelled(cancelled).onDone(done)
+                .execute();
+
+        // Verify
+        verifyCancelled(state);
+        verifyCancelledHandled(succeeded, failed, error, cancelled, done);
+        assertThat(state.getExitCode(), is(notNullValue()));
+    }
+
+    @Test
+    void timeout_タイムアウトした場合は出力の書き込み先に中断を通知する() throws Exception {
+        // Setup
+        CompletableFuture<Throwable> aborted = new CompletableFuture<>();
+        OutputSink sink = new OutputSink() {
+
+            @Override
+            public void write(final ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+            }
+
+            @Override
+            public void close() {
+                aborted.complete(null);
+            }
+
+            @Override
+            public void abort(final Throwable cause) {
+                aborted.complete(cause);
+            }
+        };
+
+        // Exercise
+        CommandState state = command("sleep").options("5").stdout(() -> sink).timeout(200L, TimeUnit.MILLISECONDS)
+                .execute();
+
+        // Verify
+        verifyCancelled(state);
+        assertThat(aborted.get(5L, TimeUnit.SECONDS), is(sameInstance(state.getThrown())));
+    }
+
+    @Test
+    void timeout_タイムアウトしない() throws Exception {
+        // Exercise
+        CommandState state = command("true").timeout(1L, TimeUnit.SECONDS).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(state.getExitCode(), is(0));
+    }
+
+    @Test
+    void 環境変数の雛形を設定() throws Exception {
+        // Setup
+        EnvironmentTemplate template = EnvironmentTemplate.clean().with("key", "value").with("PATH", "/usr/bin:/bin");
+
+        // Exercise
+        CommandState state = command("env").environment(template).environment(map -> map.put("foo", "bar"))
+                .execute();
+
+        // Verify
+        verifySucceeded(state);
+        Map<String, String> expected = new HashMap<>(template.getVariables());
+        expected.put("foo", "bar");
+        assertThat(readEnvironment(state), is(expected));
+    }
+
+    @Test
+    void 現在の環境変数を引き継ぐ雛形を設定() throws Exception {
+        // Setup
+        EnvironmentTemplate template = EnvironmentTemplate.inherit().with("key", "value").without("HOME");
+
+        // Exercise
+        CommandState state = command("env").environment(template).execute();
+
+        // Verify
+        verifySucceeded(state);
+        Map<String, String> result = readEnvironment(state);
+        assertThat(result.get("key"), is("value"));
+        assertThat(result.containsKey("HOME"), is(false));
+        assertThat(result.get("PATH"), is(System.getenv("PATH")));
+    }
+
+    @Test
+    void 環境変数に新規変数を追加() throws Exception {
+        // Exercise
+        CommandState state = command("env").environment(map -> map.put("key", "value")).execute();
+
+        // Verify
+        verifySucceeded(state);
+        try (BufferedReader reader = IOUtil.toBufferedReader(state.getStdout())) {
+            Map<String, String> result = new HashMap<>();
+            for (String line = null; (line = reader.readLine()) != null;) {
+                String[] split = line.split("=", 2);
+                result.put(split[0], (split.length == 2 ? split[1] : ""));
+            }
+            assertThat(result.get("key"), is("value"));
+        }
+    }
+
+    @Test
+    void 非同期で実行() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("sleep").options("0.5").async(true).onSucceeded(succeeded).onDone(done)
+                .execute();
+
+        // Verify
+        Thread.sleep(200L);
+        assertThat(state.isRunning(), is(true));
+        Thread.sleep(1000L);
+        verifySucceeded(state);
+        verifyHandled(succeeded, done);
+    }
+
+    @Test
+    void 非同期で実行_共有のスレッドプールで実行される() throws Exception {
+        // Setup
+        CompletableFuture<String> threadName = new CompletableFuture<>();
+
+        // Exercise
+        command("true").async(true).onDone(state -> threadName.complete(Thread.currentThread().getName())).execute();
+
+        // Verify
+        assertThat(threadName.get(5L, TimeUnit.SECONDS), startsWith("salmon-async-"));
+    }
+
+    @Test
+    void 非同期で実行_Executorを指定() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "custom"));
+        CompletableFuture<String> threadName = new CompletableFuture<>();
+
+        try {
+            // Exercise
+            command("true").async(true).executor(executor)
+                    .onDone(state -> threadName.complete(Thread.currentThread().getName())).execute();
+
+            // Verify
+            assertThat(threadName.get(5L, TimeUnit.SECONDS), is("custom"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void 非同期で実行_呼び出し元のスレッドで実行するExecutorでも監視スレッドでイベントハンドラを実行しない() throws Exception {
+        // Setup
+        CompletableFuture<String> threadName = new CompletableFuture<>();
+
+        // Exercise
+        command("true").executor(Runnable::run).onDone(state -> threadName.complete(Thread.currentThread().getName()))
+                .executeAsync();
+
+        // Verify
+        assertThat(threadName.get(5L, TimeUnit.SECONDS), startsWith("salmon-overflow"));
+    }
+
+    @Test
+    void 非同期で実行_終了後の処理を拒否された場合は別のスレッドで実行する() throws Exception {
+        // Setup
+        CompletableFuture<String> threadName = new CompletableFuture<>();
+        AtomicInteger accepted = new AtomicInteger();
+        Executor executor = task -> {
+            if (accepted.getAndIncrement() > 0) {
+                throw new RejectedExecutionException();
+            }
+            new Thread(task).start();
+        };
+
+        // Exercise
+        command("true").executor(executor).onDone(state -> threadName.complete(Thread.currentThread().getName()))
+                .executeAsync();
+
+        // Verify
+        assertThat(threadName.get(5L, TimeUnit.SECONDS), startsWith("salmon-overflow"));
+    }
+
+    @Test
+    void 非同期で実行_終了後の処理の受け付けで例外が発生した場合はエラーで終了する() throws Exception {
+        // Setup
+        IllegalStateException exception = new IllegalStateException();
+        AtomicInteger accepted = new AtomicInteger();
+        Executor executor = task -> {
+            if (accepted.getAndIncrement() > 0) {
+                throw exception;
+            }
+            new Thread(task).start();
+        };
+
+        // Exercise
+        CompletableFuture<CommandState> future = command("true").executor(executor).executeAsync()
+                .toCompletableFuture();
+
+        // Verify
+        CommandState state = future.get(5L, TimeUnit.SECONDS);
+        verifyError(state);
+        assertThat(state.getThrown(), is(sameInstance(exception)));
+    }
+
+    @Test
+    void 非同期で実行_タイムアウト() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> failed = verifyableEmptyHandler();
+        EventHandler<CommandState> error = verifyableEmptyHandler();
+        EventHandler<CommandState> cancelled = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("sleep").options("5").timeout(200L, TimeUnit.MILLISECONDS)
+                .onSucceeded(succeeded).onFailed(failed).onError(error).onCancelled(cancelled).onDone(done)
+                .executeAsync().toCompletableFuture().get(5L, TimeUnit.SECONDS);
+
+        // Verify
+        verifyCancelled(state);
+        verifyCancelledHandled(succeeded, failed, error, cancelled, done);
+    }
+
+    @Test
+    void 非同期で実行_プロセスの終了を待つスレッドを占有しない() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[10];
+
+        try {
+            // Exercise
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = command("sleep").options("1").executor(executor).executeAsync().toCompletableFuture();
+            }
+
+            // Verify
+            CompletableFuture.allOf(futures).get(5L, TimeUnit.SECONDS);
+            for (CompletableFuture<?> future : futures) {
+                verifySucceeded((CommandState) future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void executeAsync_コマンドの終了時に完了する() throws Exception {
+        // Setup
+        EventHandler<CommandState> succeeded = verifyableEmptyHandler();
+        EventHandler<CommandState> done = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("sleep").options("0.2").onSucceeded(succeeded).onDone(done).executeAsync()
+                .toCompletableFuture().get(5L, TimeUnit.SECONDS);
+
+        // Verify
+        verifySucceeded(state);
+        verifyHandled(succeeded, done);
+    }
+
+    @Test
+    void executeAsync_複数のコマンドを合成() throws Exception {
+        // Exercise
+        CompletableFuture<String> first = command("echo").options("hoge").executeAsync().toCompletableFuture()
+                .thenApply(state -> StringUtil.chomp(IOUtil.readAllSilently(state.getStdout())));
+        CompletableFuture<String> second = command("echo").options("foo").executeAsync().toCompletableFuture()
+                .thenApply(state -> StringUtil.chomp(IOUtil.readAllSilently(state.getStdout())));
+        String actual = first.thenCombine(second, (a, b) -> a + b).get(5L, TimeUnit.SECONDS);
+
+        // Verify
+        assertThat(actual, is("hogefoo"));
+    }
+
+    @Test
+    void executeAsync_コマンドがエラー終了() throws Exception {
+        // Setup
+        EventHandler<CommandState> error = verifyableHandler(SalmonTestHelper::verifyError);
+
+        // Exercise
+        CommandState state = command("存在しないコマンド").onError(error).executeAsync().toCompletableFuture()
+                .get(5L, TimeUnit.SECONDS);
+
+        // Verify
+        verifyError(state);
+        verifyHandled(error);
+    }
+
+    @Test
+    void executeAsync_イベントハンドラの例外で例外的に完了する() throws Exception {
+        // Exercise
+        CompletableFuture<CommandState> future = command("true").onDone(state -> {
+            throw new IllegalStateException();
+        }).executeAsync().toCompletableFuture();
+
+        // Verify
+        ExecutionException thrown = expectThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+        assertThat(thrown.getCause(), is(instanceOf(EventHandlingException.class)));
+    }
+
+    @Test
+    void handlerExecutor_イベントハンドラを指定したExecutorで順番に実行する() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> new Thread(runnable, "handler"));
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            // Exercise
+            CommandState state = command("true").handlerExecutor(executor)
+                    .onRunning(s -> events.add("running:" + Thread.currentThread().getName()))
+                    .onSucceeded(s -> events.add("succeeded:" + Thread.currentThread().getName()))
+                    .onDone(s -> events.add("done:" + Thread.currentThread().getName())).executeAsync()
+                    .toCompletableFuture().get(5L, TimeUnit.SECONDS);
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(events, is(Arrays.asList("running:handler", "succeeded:handler", "done:handler")));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void handlerExecutor_イベントハンドラの終了を待たずに返却する() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean handled = new AtomicBoolean();
+
+        try {
+            // Exercise
+            CommandState state = command("true").handlerExecutor(executor).onSucceeded(s -> {
+                release.await(5L, TimeUnit.SECONDS);
+                handled.set(true);
+            }).execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(handled.get(), is(false));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void handlerExecutor_イベントハンドラの例外で例外的に完了する() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger done = new AtomicInteger();
+
+        try {
+            // Exercise
+            CompletableFuture<CommandState> future = command("true").handlerExecutor(executor).onSucceeded(state -> {
+                throw new IllegalStateException();
+            }).onDone(state -> done.incrementAndGet()).executeAsync().toCompletableFuture();
+
+            // Verify
+            ExecutionException thrown = expectThrows(ExecutionException.class,
+                    () -> future.get(5L, TimeUnit.SECONDS));
+            assertThat(thrown.getCause(), is(instanceOf(EventHandlingException.class)));
+            assertThat(done.get(), is(1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void バックグラウンドのプロセスが出力を開いたままでも終了を待たない() throws Exception {
+        // Setup
+        long start = System.nanoTime();
+
+        // Exercise
+        CommandState state = command("sh").options("-c", "sleep 10 & echo hoge").execute();
+
+        // Verify
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5L, is(true));
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is("hoge"));
+    }
+
+    @Test
+    void executeAsync_バックグラウンドのプロセスが出力を開いたままでも終了を待たない() throws Exception {
+        // Exercise
+        CommandState state = command("sh").options("-c", "sleep 10 & echo hoge").executeAsync()
+                .toCompletableFuture().get(5L, TimeUnit.SECONDS);
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is("hoge"));
+    }
+
+    @Test
+    void パイプのバッファを超える出力でもブロックしない() throws Exception {
+        // Exercise
+        CommandState state = command("head").options("-c", "1048576", "/dev/zero").timeout(10L, TimeUnit.SECONDS)
+                .execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(IOUtil.readAll(state.getStdout()).length(), is(1048576));
+    }
+
+    @Test
+    void 標準エラー出力を取得() throws Exception {
+        // Exercise
+        CommandState state = command("sh").options("-c", "echo hoge 1>&2").execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(IOUtil.readAll(state.getStderr())), is("hoge"));
+        assertThat(IOUtil.readAll(state.getStdout()), is(""));
+    }
+
+    @Test
+    void stdout_出力を読み捨てる() throws Exception {
+        // Exercise
+        CommandState state = command("head").options("-c", "1048576", "/dev/zero").stdout(OutputSinks::discard)
+                .execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(IOUtil.readAll(state.getStdout()), is(""));
+    }
+
+    @Test
+    void stdout_出力をファイルに書き込む() throws Exception {
+        // Setup
+        File tempFile = Files.createTempFile("", "").toFile();
+
+        try {
+            // Exercise
+            CommandState state = command("echo").options("hoge").stdout(() -> OutputSinks.file(tempFile)).execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(StringUtil.chomp(IOUtil.readAll(new FileInputStream(tempFile))), is("hoge"));
+        } finally {
+            // Teardown
+            tempFile.delete();
+        }
+    }
+
+    @Test
+    void stdout_出力をチャネルの指定した位置に書き込む() throws Exception {
+        // Setup
+        Path tempFile = Files.createTempFile("", "");
+        Files.write(tempFile, "foo-bar".getBytes(StandardCharsets.UTF_8));
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            // Exercise
+            CommandState state = command("printf").options("hoge").stdout(() -> OutputSinks.channel(channel, 3L))
+                    .execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(new String(Files.readAllBytes(tempFile), StandardCharsets.UTF_8), is("foohoge"));
+        } finally {
+            // Teardown
+            Files.delete(tempFile);
+        }
+    }
+
+    @Test
+    void stdout_出力をコールバックで受け取る() throws Exception {
+        // Setup
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // Exercise
+        CommandState state = command("echo").options("hoge").pumpBufferSize(2)
+                .stdout(() -> OutputSinks.callback(buffer -> {
+                    while (buffer.hasRemaining()) {
+                        output.write(buffer.get());
+                    }
+                })).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(output.toString()), is("hoge"));
+    }
+
+    @Test
+    void stdout_書き込みに失敗した場合はエラー終了() throws Exception {
+        // Setup
+        IOException exception = new IOException();
+        EventHandler<CommandState> error = verifyableEmptyHandler();
+
+        // Exercise
+        CommandState state = command("head").options("-c", "1048576", "/dev/zero").stdout(() -> buffer -> {
+            throw exception;
+        }).onError(error).execute();
+
+        // Verify
+        verifyError(state);
+        verifyHandled(error);
+        assertThat(state.getThrown(), is(sameInstance(exception)));
+    }
+
+    @Test
+    void stdout_要求した分だけ出力を受け取る() throws Exception {
+        // Setup
+        AtomicInteger received = new AtomicInteger();
+        CompletableFuture<Integer> completed = new CompletableFuture<>();
+        DemandSink sink = new DemandSink() {
+
+            @Override
+            protected void onNext(final ByteBuffer buffer) {
+                received.addAndGet(buffer.remaining());
+            }
+
+            @Override
+            protected void onError(final Throwable thrown) {
+                completed.completeExceptionally(thrown);
+            }
+
+            @Override
+            protected void onComplete() {
+                completed.complete(received.get());
+            }
+        };
+        sink.start();
+        sink.request(1L);
+
+        // Exercise
+        CompletableFuture<CommandState> state = command("head").options("-c", "1048576", "/dev/zero")
+                .stdout(() -> sink).timeout(10L, TimeUnit.SECONDS).executeAsync().toCompletableFuture();
+
+        // Verify
+        Thread.sleep(200L);
+        assertThat(received.get() > 0, is(true));
+        assertThat(received.get() < 1048576, is(true));
+        assertThat(state.isDone(), is(false));
+        sink.request(Long.MAX_VALUE);
+        assertThat(completed.get(10L, TimeUnit.SECONDS), is(1048576));
+        verifySucceeded(state.get(10L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void 出力を多重化して読み取る_パイプのバッファを超える出力でもブロックしない() throws Exception {
+        multiplexed(() -> {
+
+            // Exercise
+            CommandState state = command("sh").options("-c", "head -c 1048576 /dev/zero; echo hoge 1>&2")
+                    .timeout(10L, TimeUnit.SECONDS).execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(IOUtil.readAll(state.getStdout()).length(), is(1048576));
+            assertThat(StringUtil.chomp(IOUtil.readAll(state.getStderr())), is("hoge"));
+        });
+    }
+
+    @Test
+    void 出力を多重化して読み取る_複数のコマンドを並行して実行() throws Exception {
+        multiplexed(() -> {
+
+            // Exercise
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[50];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = command("echo").options(String.valueOf(i)).executeAsync().toCompletableFuture();
+            }
+            CompletableFuture.allOf(futures).get(10L, TimeUnit.SECONDS);
+
+            // Verify
+            for (int i = 0; i < futures.length; i++) {
+                CommandState state = (CommandState) futures[i].get();
+                verifySucceeded(state);
+                assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is(String.valueOf(i)));
+            }
+        });
+    }
+
+    @Test
+    void 出力を多重化して読み取る_バックグラウンドのプロセスが出力を開いたままでも他のコマンドを止めない() throws Exception {
+        multiplexed(() -> {
+            // Setup
+            CompletableFuture<?>[] daemons = new CompletableFuture<?>[4];
+            for (int i = 0; i < daemons.length; i++) {
+                daemons[i] = command("sh").options("-c", "sleep 10 & echo hoge").executeAsync().toCompletableFuture();
+            }
+            CompletableFuture.allOf(daemons).get(5L, TimeUnit.SECONDS);
+
+            // Exercise
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[10];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = command("echo").options(String.valueOf(i)).executeAsync().toCompletableFuture();
+            }
+            CompletableFuture.allOf(futures).get(5L, TimeUnit.SECONDS);
+
+            // Verify
+            for (int i = 0; i < futures.length; i++) {
+                CommandState state = (CommandState) futures[i].get();
+                verifySucceeded(state);
+                assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is(String.valueOf(i)));
+            }
+        });
+    }
+
+    @Test
+    void stdout_末尾のみを保持する() throws Exception {
+        // Exercise
+        CommandState state = command("seq").options("1", "100000").stdout(() -> OutputSinks.tail(16))
+                .stderr(() -> OutputSinks.tailLines(1)).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(state.getCapturedStdout().size(), is(16));
+        assertThat(IOUtil.readAll(state.getStdout()), is("98\n99999\n100000\n"));
+        assertThat(state.getCapturedStderr().size(), is(0));
+    }
+
+    @Test
+    void stdout_末尾の行のみを保持する() throws Exception {
+        // Exercise
+        CommandState state = command("seq").options("1", "100000").stdout(() -> OutputSinks.tailLines(2)).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(IOUtil.readAll(state.getStdout()), is("99999\n100000\n"));
+    }
+
+    @Test
+    void stdout_閾値を超えた出力を一時ファイルに退避する() throws Exception {
+        // Setup
+        Path path;
+
+        // Exercise
+        try (CommandState state = command("head").options("-c", "1048576", "/dev/zero")
+                .stdout(() -> OutputSinks.spill(4096)).execute()) {
+
+            // Verify
+            verifySucceeded(state);
+            SpilledOutput spilled = (SpilledOutput) state.getCapturedStdout();
+            assertThat(spilled.isSpilled(), is(true));
+            assertThat(spilled.length(), is(1048576L));
+            assertThat(spilled.asByteBuffer().remaining(), is(1048576));
+            path = spilled.toPath();
+            assertThat(Files.size(path), is(1048576L));
+            assertThat(IOUtil.readAll(state.getStdout()).length(), is(1048576));
+        }
+        assertThat(Files.exists(path), is(false));
+    }
+
+    @Test
+    void stdout_メモリ上に保持しない場合はgetCapturedStdoutがnullを返す() throws Exception {
+        // Exercise
+        CommandState state = command("echo").options("hoge").stdout(OutputSinks::discard).execute();
+
+        // Verify
+        assertThat(state.getCapturedStdout(), is(nullValue()));
+        assertThat(state.getCapturedStderr(), is(notNullValue()));
+    }
+
+    @Test
+    void onStdoutLine_1行ごとにイベントハンドラが呼び出される() throws Exception {
+        // Setup
+        List<String> stdout = new ArrayList<>();
+        List<String> stderr = new ArrayList<>();
+
+        // Exercise
+        CommandState state = command("sh").options("-c", "seq 1 3; echo hoge 1>&2")
+                .onStdoutLine(line -> stdout.add(line.toString())).onStderrLine(line -> stderr.add(line.toString()))
+                .charset(StandardCharsets.UTF_8).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(stdout, is(Arrays.asList("1", "2", "3")));
+        assertThat(stderr, is(Arrays.asList("hoge")));
+        assertThat(IOUtil.readAll(state.getStdout()), is("1\n2\n3\n"));
+    }
+
+    @Test
+    void onStdoutLine_プロセスの実行中に呼び出される() throws Exception {
+        // Setup
+        CompletableFuture<String> first = new CompletableFuture<>();
+
+        // Exercise
+        CompletableFuture<CommandState> future = command("sh").options("-c", "echo hoge; sleep 1; echo foo")
+                .onStdoutLine(line -> first.complete(line.toString())).executeAsync().toCompletableFuture();
+
+        // Verify
+        assertThat(first.get(5L, TimeUnit.SECONDS), is("hoge"));
+        assertThat(future.isDone(), is(false));
+        verifySucceeded(future.get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void pumpBufferSize_0以下の場合は例外() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> {
+            command("true").pumpBufferSize(0);
+        });
+    }
+
+    @Test
+    void stdin_文字列を標準入力に書き込む() throws Exception {
+        // Exercise
+        CommandState state = command("cat").stdin("hoge\nfoo").execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(IOUtil.readAll(state.getStdout()), is("hoge\nfoo"));
+    }
+
+    @Test
+    void stdin_パイプのバッファを超える入力と出力でもデッドロックしない() throws Exception {
+        // Setup
+        byte[] input = new byte[4 * 1024 * 1024];
+        Arrays.fill(input, (byte) 'a');
+
+        // Exercise
+        CommandState state = command("cat").stdin(input).timeout(10L, TimeUnit.SECONDS).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(state.getCapturedStdout().size(), is(input.length));
+    }
+
+    @Test
+    void stdin_ファイルを標準入力にリダイレクト() throws Exception {
+        // Setup
+        Path tempFile = Files.createTempFile("", "");
+        Files.write(tempFile, "hoge\n".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            // Exercise
+            CommandState state = command("cat").stdin(tempFile).execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(IOUtil.readAll(state.getStdout()), is("hoge\n"));
+        } finally {
+            // Teardown
+            Files.delete(tempFile);
+        }
+    }
+
+    @Test
+    void stdin_入力を読み取らずに終了しても成功する() throws Exception {
+        // Setup
+        byte[] input = new byte[4 * 1024 * 1024];
+
+        // Exercise
+        CommandState state = command("true").stdin(input).execute();
+
+        // Verify
+        verifySucceeded(state);
+    }
+
+    @Test
+    void stdin_入力の読み取りに失敗した場合はエラー() throws Exception {
+        // Setup
+        InputStream input = new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                throw new IOException("stdin");
+            }
+        };
+
+        // Exercise
+        CommandState state = command("cat").stdin(input).timeout(10L, TimeUnit.SECONDS).execute();
+
+        // Verify
+        assertThat(state.isError(), is(true));
+        assertThat(state.getThrown().getMessage(), is("stdin"));
+    }
+
+    @Test
+    void cache_同じコマンドはプロセスを起動せずに実行結果を返す() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 1024L, 1L, TimeUnit.MINUTES);
+        List<String> lines = new ArrayList<>();
+        CommandState first = command("sh").options("-c", "echo $$").cache(cache).execute();
+
+        // Exercise
+        CommandState second = command("sh").options("-c", "echo $$").cache(cache).onStdoutLine(line -> lines.add(line.toString()))
+                .execute();
+
+        // Verify
+        verifySucceeded(second);
+        String pid = IOUtil.readAll(first.getStdout());
+        assertThat(IOUtil.readAll(second.getStdout()), is(pid));
+        assertThat(lines, is(Arrays.asList(StringUtil.chomp(pid))));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    void cache_異なるオプションの場合は実行する() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 1024L, 1L, TimeUnit.MINUTES);
+        command("echo").options("hoge").cache(cache).execute();
+
+        // Exercise
+        CommandState state = command("echo").options("foo").cache(cache).executeAsync().toCompletableFuture()
+                .get(10L, TimeUnit.SECONDS);
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is("foo"));
+        assertThat(cache.getHitCount(), is(0L));
+        assertThat(cache.size(), is(2));
+    }
+
+    @Test
+    void cache_環境変数の設定は1回だけ呼び出す() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 1024L, 1L, TimeUnit.MINUTES);
+        AtomicInteger count = new AtomicInteger();
+
+        // Exercise
+        CommandState state = command("sh").options("-c", "echo $SALMON_CACHE").environment(env -> {
+            count.incrementAndGet();
+            env.put("SALMON_CACHE", "hoge");
+        }).cache(cache).execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is("hoge"));
+        assertThat(count.get(), is(1));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    void singleFlight_実行中の同じコマンドは実行結果を共有する() throws Exception {
+        // Setup
+        List<String> lines = new ArrayList<>();
+        CompletableFuture<CommandState> first = command("sh").options("-c", "echo $$; sleep 0.5").singleFlight(true)
+                .executeAsync().toCompletableFuture();
+
+        // Exercise
+        CompletableFuture<CommandState> second = command("sh").options("-c", "echo $$; sleep 0.5").singleFlight(true)
+                .onStdoutLine(line -> lines.add(line.toString())).executeAsync().toCompletableFuture();
+        CommandState third = command("sh").options("-c", "echo $$; sleep 0.5").singleFlight(true).execute();
+
+        // Verify
+        String pid = IOUtil.readAll(first.get(10L, TimeUnit.SECONDS).getStdout());
+        CommandState secondState = second.get(10L, TimeUnit.SECONDS);
+        verifySucceeded(secondState);
+        verifySucceeded(third);
+        assertThat(IOUtil.readAll(secondState.getStdout()), is(pid));
+        assertThat(IOUtil.readAll(third.getStdout()), is(pid));
+        assertThat(lines, is(Arrays.asList(StringUtil.chomp(pid))));
+    }
+
+    @Test
+    void singleFlight_終了後の実行はプロセスを起動する() throws Exception {
+        // Setup
+        CommandState first = command("sh").options("-c", "echo $$").singleFlight(true).execute();
+
+        // Exercise
+        CommandState second = command("sh").options("-c", "echo $$").singleFlight(true).execute();
+
+        // Verify
+        verifySucceeded(second);
+        assertThat(IOUtil.readAll(second.getStdout()), is(not(IOUtil.readAll(first.getStdout()))));
+    }
+
+    @Test
+    void singleFlight_実行中のコマンドがタイムアウトした場合は同じ例外で終了する() throws Exception {
+        // Setup
+        CompletableFuture<CommandState> first = command("sleep").options("5").singleFlight(true)
+                .timeout(200L, TimeUnit.MILLISECONDS).executeAsync().toCompletableFuture();
+
+        // Exercise
+        CommandState second = command("sleep").options("5").singleFlight(true).timeout(200L, TimeUnit.MILLISECONDS)
+                .execute();
+
+        // Verify
+        CommandState firstState = first.get(10L, TimeUnit.SECONDS);
+        assertThat(firstState.getStatus(), is(CommandState.Status.CANCELLED));
+        assertThat(second.getStatus(), is(CommandState.Status.CANCELLED));
+        assertThat(second.getThrown(), is(sameInstance(firstState.getThrown())));
+    }
+
+    @Test
+    void singleFlight_タイムアウトの設定が異なるコマンドは待たない() throws Exception {
+        // Setup
+        CompletableFuture<CommandState> first = command("sleep").options("1").singleFlight(true)
+                .timeout(200L, TimeUnit.MILLISECONDS).executeAsync().toCompletableFuture();
+
+        // Exercise
+        CommandState second = command("sleep").options("1").singleFlight(true).execute();
+
+        // Verify
+        assertThat(first.get(10L, TimeUnit.SECONDS).getStatus(), is(CommandState.Status.CANCELLED));
+        verifySucceeded(second);
+    }
+
+    @Test
+    void singleFlight_待機中に割り込まれた場合はエラーで終了する() throws Exception {
+        // Setup
+        CompletableFuture<CommandState> first = command("sleep").options("2").singleFlight(true).executeAsync()
+                .toCompletableFuture();
+        CompletableFuture<CommandState> done = new CompletableFuture<>();
+        CompletableFuture<Throwable> thrown = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                command("sleep").options("2").singleFlight(true).onDone(done::complete).execute();
+                thrown.complete(null);
+            } catch (Exception e) {
+                thrown.complete(e);
+            }
+        });
+
+        // Exercise
+        thread.start();
+        Thread.sleep(200L);
+        thread.interrupt();
+
+        // Verify
+        assertThat(thrown.get(5L, TimeUnit.SECONDS), is(instanceOf(InterruptedException.class)));
+        verifyError(done.get(5L, TimeUnit.SECONDS));
+        verifySucceeded(first.get(10L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void build_確定したコマンドを並行して繰り返し実行する() throws Exception {
+        // Setup
+        AtomicInteger done = new AtomicInteger();
+        CommandSpec spec = command("echo").options("hoge").onDone(state -> done.incrementAndGet()).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            // Exercise
+            List<CompletableFuture<CommandState>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return spec.execute();
+                    } catch (IOException | InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+
+            // Verify
+            for (CompletableFuture<CommandState> future : futures) {
+                CommandState state = future.get(10L, TimeUnit.SECONDS);
+                verifySucceeded(state);
+                assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is("hoge"));
+            }
+            assertThat(done.get(), is(8));
+        } finally {
+            // Teardown
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void build_確定した後のビルダーの変更は反映されない() throws Exception {
+        // Setup
+        CommandBuilder builder = command("echo").options("hoge");
+        CommandSpec spec = builder.build();
+        builder.options("foo");
+
+        // Exercise
+        CommandState state = spec.executeAsync().toCompletableFuture().get(10L, TimeUnit.SECONDS);
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(StringUtil.chomp(IOUtil.readAll(state.getStdout())), is("hoge"));
+        assertThat(spec.getCommandLine(), is(Arrays.asList("echo", "hoge")));
+    }
+
+    @Test
+    void build_確定した後に文字セットを変更しても標準入力のエンコードは変わらない() throws Exception {
+        // Setup
+        CommandBuilder builder = command("wc").options("-c").stdin("あ").charset(StandardCharsets.UTF_8);
+        CommandSpec spec = builder.build();
+        builder.charset(Charset.forName("Shift_JIS"));
+
+        // Exercise
+        CommandState first = spec.execute();
+        CommandState second = spec.execute();
+
+        // Verify
+        verifySucceeded(first);
+        assertThat(IOUtil.readAll(first.getStdout()).trim(), is("3"));
+        assertThat(IOUtil.readAll(second.getStdout()).trim(), is("3"));
+        assertThat(spec.getCharset(), is(StandardCharsets.UTF_8));
+        assertThat(IOUtil.readAll(builder.execute().getStdout()).trim(), is("2"));
+    }
+
+    @Test
+    void stdin_設定した後に配列を変更しても入力は変わらない() throws Exception {
+        // Setup
+        byte[] input = "hoge".getBytes(StandardCharsets.UTF_8);
+        CommandBuilder builder = command("cat").stdin(input);
+        input[0] = 'x';
+
+        // Exercise
+        CommandState state = builder.execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(IOUtil.readAll(state.getStdout()), is("hoge"));
+    }
+
+    @Test
+    void 標準出力をファイルにリダイレクト() throws Exception {
+        // Setup
+        File tempFile = Files.createTempFile("", "").toFile();
+
+        try {
+            // Exercise
+            CommandState state = command("echo").options("hoge").redirectStdout(tempFile).execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(StringUtil.chomp(IOUtil.readAll(new FileInputStream(tempFile))), is("hoge"));
+
+        } finally {
+            // Teardown
+            tempFile.delete();
+        }
+    }
+
+    @Test
+    void 標準出力をファイルに追記() throws Exception {
+        // Setup
+        File tempFile = Files.createTempFile("", "").toFile();
+        Files.write(tempFile.toPath(), "foo\n".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            // Exercise
+            CommandState state = command("echo").options("hoge").appendStdout(tempFile).execute();
+
+            // Verify
+            verifySucceeded(state);
+            assertThat(IOUtil.readAll(new FileInputStream(tempFile)), is("foo\nhoge\n"));
+
+        } finally {
+            // Teardown
+            tempFile.delete();
+        }
+    }
+
+    @Test
+    void 標準出力をdevnullにリダイレクト() throws Exception {
+        // Exercise
+        CommandState state = command("echo").options("hoge").redirectStdoutToDevNull().execute();
+
+        // Verify
+        verifySucceeded(state);
+        assertThat(IOUtil.readAll(state.getStdout()), is(""));
+    }
+
+    private static Map<String, String> readEnvironment(final CommandState state) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        try (BufferedReader reader = IOUtil.toBufferedReader(state.getStdout())) {
+            for (String line = null; (line = reader.readLine()) != null;) {
+                String[] split = line.split("=", 2);
+                result.put(split[0], (split.length == 2 ? split[1] : ""));
+            }
+        }
+        return result;
+    }
+
+}
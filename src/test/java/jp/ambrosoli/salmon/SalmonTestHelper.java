@@ -22,6 +22,10 @@ class SalmonTestHelper {
         SalmonConfigAccessor.withTemporaryConfig("auto.msdos", true, runnable);
     }
 
+    static void multiplexed(final RunnableToThrowException runnable) throws Exception {
+        SalmonConfigAccessor.withTemporaryConfig("pump.multiplexed", true, runnable);
+    }
+
     static void verifySucceeded(final CommandState state) {
         assertAll(() -> {
             assertThat(state.isRunning(), is(false));
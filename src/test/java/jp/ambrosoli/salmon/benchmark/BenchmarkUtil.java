@@ -0,0 +1,78 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import jp.ambrosoli.salmon.test.util.RunnableToThrowException;
+
+/**
+ * <p>
+ * ベンチマークの計測と結果の出力を行うユーティリティクラスです。
+ * </p>
+ *
+ * <p>
+ * ベンチマーククラスはクラス名が{@code Benchmark}で終わるため、{@code gradle check}では実行されません。
+ * 各クラスのmainメソッドから個別に実行してください。
+ * </p>
+ */
+@SuppressWarnings("nls")
+public class BenchmarkUtil {
+
+    /**
+     * <p>
+     * ウォームアップを行ったあと、処理を指定回数実行して1回ごとの所要時間(ナノ秒)を返します。
+     * </p>
+     */
+    public static long[] measure(final int warmup, final int iterations, final RunnableToThrowException runnable)
+            throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            runnable.run();
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        return samples;
+    }
+
+    /**
+     * <p>
+     * 計測結果の統計値を1行で出力します。
+     * </p>
+     */
+    public static void report(final String label, final long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        System.out.println(String.format(Locale.ENGLISH, "%-32s n=%-6d mean=%10.1fus p50=%10.1fus p99=%10.1fus max=%10.1fus",
+                label, sorted.length, mean / 1000d, percentile(sorted, 50) / 1000d, percentile(sorted, 99) / 1000d,
+                sorted[sorted.length - 1] / 1000d));
+    }
+
+    /**
+     * <p>
+     * 処理全体の所要時間とスループットを1行で出力します。
+     * </p>
+     */
+    public static void reportThroughput(final String label, final int operations, final long elapsedNanos) {
+        System.out.println(String.format(Locale.ENGLISH, "%-32s n=%-6d elapsed=%10.1fms throughput=%10.1fops/s", label,
+                operations, elapsedNanos / 1000000d, operations / (elapsedNanos / 1000000000d)));
+    }
+
+    /**
+     * <p>
+     * 整数のシステムプロパティを返します。
+     * </p>
+     */
+    public static int intProperty(final String key, final int defaultValue) {
+        return Integer.getInteger(key, defaultValue).intValue();
+    }
+
+    private static long percentile(final long[] sorted, final int percentile) {
+        int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+}
@@ -0,0 +1,64 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import static jp.ambrosoli.salmon.benchmark.BenchmarkUtil.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+
+import jp.ambrosoli.salmon.Salmon;
+import jp.ambrosoli.salmon.test.util.SalmonConfigAccessor;
+
+/**
+ * <p>
+ * 出力を読み取るスレッドをプロセスごとに割り当てる場合と、多重化して固定数のスレッドで読み取る場合を比較します。
+ * </p>
+ *
+ * <p>
+ * {@code -Dbenchmark.commands}で同時に実行するコマンド数を指定します。各コマンドは標準出力と標準エラー出力に書き込んだあと1秒間停止します。
+ * {@code -Dbenchmark.multiplexed=true}を指定すると多重化して読み取ります。プールに残ったスレッドが計測に影響しないよう、方式ごとに別のJVMで実行してください。
+ * </p>
+ */
+@SuppressWarnings("nls")
+public class OutputPumpBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        int commands = intProperty("benchmark.commands", 2000);
+
+        if (Boolean.getBoolean("benchmark.multiplexed")) {
+            SalmonConfigAccessor.withTemporaryConfig("pump.multiplexed", true, () -> run("multiplexed", commands));
+        } else {
+            run("thread per stream", commands);
+        }
+    }
+
+    private static void run(final String label, final int commands) throws Exception {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[commands];
+        long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            futures[i] = Salmon.command("sh").options("-c", "echo out; echo err 1>&2; sleep 1").executeAsync()
+                    .toCompletableFuture();
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures);
+        int peak = 0;
+        while (!all.isDone()) {
+            peak = Math.max(peak, countPumpThreads());
+            Thread.sleep(10L);
+        }
+        long elapsed = System.nanoTime() - start;
+        reportThroughput(label + " (peak pump threads=" + peak + ")", commands, elapsed);
+    }
+
+    private static int countPumpThreads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int count = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadName().startsWith("salmon-pump")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
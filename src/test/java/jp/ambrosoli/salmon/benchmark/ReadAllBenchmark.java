@@ -0,0 +1,74 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import static jp.ambrosoli.salmon.benchmark.BenchmarkUtil.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import jp.ambrosoli.salmon.test.util.RunnableToThrowException;
+import jp.ambrosoli.salmon.utils.IOUtil;
+
+/**
+ * <p>
+ * {@link IOUtil#readAll(InputStream, Charset)}と、{@link ByteArrayOutputStream}に読み取ってからデコードする従来の実装を比較します。
+ * </p>
+ *
+ * <p>
+ * 1KB、1MB、100MBの入力ごとに計測します。100MBの入力には{@code -Xmx2g}程度のヒープが必要です。
+ * </p>
+ *
+ * <pre>
+ * java -Xmx2g -cp ... jp.ambrosoli.salmon.benchmark.ReadAllBenchmark
+ * </pre>
+ */
+@SuppressWarnings("nls")
+public class ReadAllBenchmark {
+
+    private static final int[] SIZES = { 1024, 1024 * 1024, 100 * 1024 * 1024 };
+
+    public static void main(final String[] args) throws Exception {
+        for (int size : SIZES) {
+            byte[] input = new byte[size];
+            Arrays.fill(input, (byte) 'a');
+            int iterations = Math.max(5, intProperty("benchmark.iterations", 20000) / Math.max(1, size / 1024));
+            String label = size / 1024 + "KB";
+
+            run("legacy " + label, iterations, () -> {
+                legacyReadAll(new ByteArrayInputStream(input), StandardCharsets.UTF_8);
+            });
+            run("readAll " + label, iterations, () -> {
+                IOUtil.readAll(new ByteArrayInputStream(input), StandardCharsets.UTF_8);
+            });
+        }
+    }
+
+    private static void run(final String label, final int iterations, final RunnableToThrowException runnable)
+            throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long allocated = bean.getThreadAllocatedBytes(id);
+        report(label, measure(iterations / 5, iterations, runnable));
+        allocated = bean.getThreadAllocatedBytes(id) - allocated;
+        System.out.println(String.format(Locale.ENGLISH, "%-32s allocated=%.1fKB/op", label,
+                allocated / 1024d / (iterations + iterations / 5)));
+    }
+
+    private static String legacyReadAll(final InputStream stream, final Charset charset) throws IOException {
+        try (InputStream in = stream; ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            byte[] buff = new byte[1024];
+            int size = 0;
+            while ((size = in.read(buff)) > 0) {
+                out.write(buff, 0, size);
+            }
+            return out.toString(charset.toString());
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import static jp.ambrosoli.salmon.benchmark.BenchmarkUtil.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.ambrosoli.salmon.Salmon;
+import jp.ambrosoli.salmon.command.posix.LaunchMechanism;
+
+/**
+ * <p>
+ * POSIX環境で{@link LaunchMechanism}ごとのプロセス起動レイテンシを比較します。
+ * </p>
+ *
+ * <p>
+ * JDKは起動方式をプロセスごとに一度しか読み込まないため、起動方式ごとに子JVMを起動して計測します。
+ * ヒープの大きさによる差を確認するには、{@code -Dbenchmark.ballast.mb}で子JVMに確保させるヒープ量(MB)を指定してください。
+ * </p>
+ *
+ * <pre>
+ * java -cp ... -Dbenchmark.ballast.mb=4096 jp.ambrosoli.salmon.benchmark.SpawnLatencyBenchmark
+ * </pre>
+ */
+@SuppressWarnings("nls")
+public class SpawnLatencyBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length > 0) {
+            runChild(LaunchMechanism.valueOf(args[0]));
+            return;
+        }
+        int ballast = intProperty("benchmark.ballast.mb", 0);
+        for (LaunchMechanism mechanism : LaunchMechanism.values()) {
+            if (!mechanism.isSupported()) {
+                System.out.println(mechanism + " is not supported on this platform.");
+                continue;
+            }
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-Xmx" + Math.max(256, ballast * 2) + "m");
+            command.add("-Dbenchmark.ballast.mb=" + ballast);
+            command.add("-Dbenchmark.iterations=" + intProperty("benchmark.iterations", 500));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SpawnLatencyBenchmark.class.getName());
+            command.add(mechanism.name());
+            new ProcessBuilder(command).inheritIO().start().waitFor();
+        }
+    }
+
+    private static void runChild(final LaunchMechanism mechanism) throws Exception {
+        mechanism.apply();
+        byte[][] ballast = allocateBallast(intProperty("benchmark.ballast.mb", 0));
+        int iterations = intProperty("benchmark.iterations", 500);
+        long[] samples = measure(iterations / 5, iterations, () -> {
+            Salmon.command("true").execute();
+        });
+        report(mechanism + " (ballast=" + ballast.length + "MB)", samples);
+    }
+
+    private static byte[][] allocateBallast(final int megabytes) {
+        byte[][] ballast = new byte[megabytes][];
+        for (int i = 0; i < megabytes; i++) {
+            ballast[i] = new byte[1024 * 1024];
+            // ページを実際に割り当てるために書き込む
+            for (int j = 0; j < ballast[i].length; j += 4096) {
+                ballast[i][j] = 1;
+            }
+        }
+        return ballast;
+    }
+
+}
@@ -0,0 +1,85 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import static jp.ambrosoli.salmon.benchmark.BenchmarkUtil.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import jp.ambrosoli.salmon.Salmon;
+import jp.ambrosoli.salmon.command.CommandBuilder;
+import jp.ambrosoli.salmon.config.SalmonInitializer;
+
+/**
+ * <p>
+ * JVMの起動直後に最初のコマンドが終了するまでの時間を計測します。
+ * </p>
+ *
+ * <p>
+ * クラスの読み込みや設定の読み込みは1つのJVMで一度しか行われないため、計測ごとに子JVMを起動します。
+ * 子JVMではmainメソッドの開始から、{@link Salmon#command(String)}がビルダーを返すまでと{@code true}コマンドが終了するまでを
+ * 計測します。{@code eager}は{@link SalmonInitializer#initialize()}で設定を先に読み込んだ場合、{@code lazy}は最初のコマンドの
+ * 実行時に読み込んだ場合の結果です。
+ * </p>
+ *
+ * <pre>
+ * java -cp ... -Dbenchmark.iterations=20 jp.ambrosoli.salmon.benchmark.StartupBenchmark
+ * </pre>
+ */
+@SuppressWarnings("nls")
+public class StartupBenchmark {
+
+    private static final String EAGER = "eager";
+    private static final String LAZY = "lazy";
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length > 0) {
+            runChild(EAGER.equals(args[0]));
+            return;
+        }
+        int iterations = intProperty("benchmark.iterations", 20);
+        for (String mode : new String[] { LAZY, EAGER }) {
+            // 初回はファイルキャッシュの影響を受けるため計測しない
+            spawnChild(mode);
+            long[] builderSamples = new long[iterations];
+            long[] commandSamples = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long[] result = spawnChild(mode);
+                builderSamples[i] = result[0];
+                commandSamples[i] = result[1];
+            }
+            report("time-to-builder (" + mode + ")", builderSamples);
+            report("time-to-first-command (" + mode + ")", commandSamples);
+        }
+    }
+
+    private static long[] spawnChild(final String mode) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupBenchmark.class.getName());
+        command.add(mode);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String[] line = reader.readLine().trim().split(" ");
+            process.waitFor();
+            return new long[] { Long.parseLong(line[0]), Long.parseLong(line[1]) };
+        }
+    }
+
+    private static void runChild(final boolean eager) throws Exception {
+        long start = System.nanoTime();
+        if (eager) {
+            SalmonInitializer.initialize();
+        }
+        CommandBuilder builder = Salmon.command("true");
+        long built = System.nanoTime();
+        builder.execute();
+        long executed = System.nanoTime();
+        System.out.println((built - start) + " " + (executed - start));
+    }
+
+}
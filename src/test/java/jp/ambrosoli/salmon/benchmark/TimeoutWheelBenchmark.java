@@ -0,0 +1,44 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import static jp.ambrosoli.salmon.benchmark.BenchmarkUtil.*;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.ambrosoli.salmon.command.internal.TimeoutWheel;
+
+/**
+ * <p>
+ * {@link TimeoutWheel}へのタイムアウトの登録と取り消しにかかる時間を計測します。
+ * </p>
+ *
+ * <p>
+ * {@code -Dbenchmark.timeouts}で1回の計測で登録するタイムアウトの数を指定します。
+ * </p>
+ *
+ * <pre>
+ * java -cp ... -Dbenchmark.timeouts=50000 jp.ambrosoli.salmon.benchmark.TimeoutWheelBenchmark
+ * </pre>
+ */
+@SuppressWarnings("nls")
+public class TimeoutWheelBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        int timeouts = intProperty("benchmark.timeouts", 50000);
+        TimeoutWheel wheel = TimeoutWheel.getInstance();
+        TimeoutWheel.Timeout[] scheduled = new TimeoutWheel.Timeout[timeouts];
+        Runnable action = () -> {
+            // do nothing
+        };
+
+        long[] samples = measure(5, 20, () -> {
+            for (int i = 0; i < timeouts; i++) {
+                scheduled[i] = wheel.schedule(60L, TimeUnit.SECONDS, action);
+            }
+            for (int i = 0; i < timeouts; i++) {
+                scheduled[i].cancel();
+            }
+        });
+        report("schedule+cancel x" + timeouts, samples);
+    }
+
+}
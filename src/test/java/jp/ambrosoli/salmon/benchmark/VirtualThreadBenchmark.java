@@ -0,0 +1,63 @@
+package jp.ambrosoli.salmon.benchmark;
+
+import static jp.ambrosoli.salmon.benchmark.BenchmarkUtil.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jp.ambrosoli.salmon.Salmon;
+import jp.ambrosoli.salmon.command.internal.AsyncEngine;
+
+/**
+ * <p>
+ * 非同期コマンドの実行を、共有のスレッドプール、コマンドごとのプラットフォームスレッド、仮想スレッドで比較します。
+ * </p>
+ *
+ * <p>
+ * {@code -Dbenchmark.commands}で同時に実行するコマンド数を、{@code -Dbenchmark.sleep}で各コマンドの実行時間(秒)を指定します。 仮想スレッドの計測はJava 21以降で
+ * 実行した場合のみ行われます。
+ * </p>
+ */
+@SuppressWarnings("nls")
+public class VirtualThreadBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        int commands = intProperty("benchmark.commands", 1000);
+        String sleep = System.getProperty("benchmark.sleep", "1");
+
+        run("shared pool", commands, sleep, AsyncEngine.platformThreads());
+
+        ExecutorService platformThreads = Executors.newCachedThreadPool();
+        try {
+            run("platform thread per command", commands, sleep, platformThreads);
+        } finally {
+            platformThreads.shutdown();
+        }
+
+        if (AsyncEngine.isVirtualThreadAvailable()) {
+            run("virtual thread per command", commands, sleep, AsyncEngine.virtualThreads());
+        } else {
+            System.out.println("virtual threads are not available on this JVM.");
+        }
+    }
+
+    private static void run(final String label, final int commands, final String sleep,
+            final Executor executor) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        CountDownLatch latch = new CountDownLatch(commands);
+        long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            Salmon.command("sleep").options(sleep).async(true).executor(executor).onDone(state -> latch.countDown())
+                    .execute();
+        }
+        latch.await();
+        long elapsed = System.nanoTime() - start;
+        reportThroughput(label + " (peak threads=" + threads.getPeakThreadCount() + ")", commands, elapsed);
+    }
+
+}
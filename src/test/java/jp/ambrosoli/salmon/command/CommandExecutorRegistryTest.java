@@ -0,0 +1,94 @@
+package jp.ambrosoli.salmon.command;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.gen5.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.gen5.api.BeforeAll;
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.config.SalmonInitializer;
+import jp.ambrosoli.salmon.utils.PlatformUtil;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class CommandExecutorRegistryTest {
+
+    @BeforeAll
+    static void beforeAll() {
+        SalmonInitializer.initialize();
+    }
+
+    @Test
+    void get_同じCommandExecutorを再利用する() throws Exception {
+        // Exercise
+        CommandExecutor first = CommandExecutorRegistry.get();
+        CommandExecutor second = CommandExecutorRegistry.get();
+
+        // Verify
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    @Test
+    void get_ServiceLoaderで読み込んだファクトリを使用する() throws Exception {
+        // Exercise
+        CommandExecutor actual = CommandExecutorRegistry.get(PlatformUtil.isWindows() ? "msdos" : "posix");
+
+        // Verify
+        assertThat(actual, is(sameInstance(CommandExecutorRegistry.get())));
+    }
+
+    @Test
+    void get_名前が一致するCommandExecutorを返す() throws Exception {
+        // Setup
+        CommandExecutor executor = mock(CommandExecutor.class);
+        CommandExecutorFactory factory = factory("registry-test", true, executor);
+        CommandExecutor preferred = CommandExecutorRegistry.get();
+
+        // Exercise
+        CommandExecutorRegistry.registerFactory(factory);
+        CommandExecutor first = CommandExecutorRegistry.get("registry-test");
+        CommandExecutor second = CommandExecutorRegistry.get("registry-test");
+
+        // Verify
+        assertThat(first, is(sameInstance(executor)));
+        assertThat(second, is(sameInstance(executor)));
+        verify(factory, times(1)).create();
+        assertThat(CommandExecutorRegistry.get().getClass(), is(equalTo(preferred.getClass())));
+    }
+
+    @Test
+    void get_名前が一致するCommandExecutorが使用できない場合は例外をスローする() throws Exception {
+        // Setup
+        CommandExecutorRegistry.registerFactory(factory("registry-unsupported", false, mock(CommandExecutor.class)));
+
+        // Exercise & Verify
+        assertThrows(IllegalStateException.class, () -> CommandExecutorRegistry.get("registry-unsupported"));
+    }
+
+    @Test
+    void find_条件に合致するCommandExecutorを返す() throws Exception {
+        // Setup
+        CommandExecutor executor = mock(CommandExecutor.class);
+        CommandExecutorRegistry.registerFactory(factory("registry-find", true, executor));
+
+        // Exercise & Verify
+        assertThat(CommandExecutorRegistry.find(factory -> factory.getName().startsWith("registry-find")).get(),
+                is(sameInstance(executor)));
+        assertThat(CommandExecutorRegistry.find(factory -> false).isPresent(), is(false));
+    }
+
+    private static CommandExecutorFactory factory(final String name, final boolean supported,
+            final CommandExecutor executor) {
+        CommandExecutorFactory factory = mock(CommandExecutorFactory.class);
+        when(factory.getName()).thenReturn(name);
+        // プリセットのファクトリより優先されないよう、最も低いプライオリティで登録する
+        when(factory.getPriority()).thenReturn(Integer.MAX_VALUE);
+        when(factory.isSupported()).thenReturn(supported);
+        when(factory.create()).thenReturn(executor);
+        return factory;
+    }
+}
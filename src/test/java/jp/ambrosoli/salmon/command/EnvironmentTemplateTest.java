@@ -0,0 +1,96 @@
+package jp.ambrosoli.salmon.command;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class EnvironmentTemplateTest {
+
+    @Test
+    void inherit_現在の環境変数に変更を加える() throws Exception {
+        // Exercise
+        EnvironmentTemplate actual = EnvironmentTemplate.inherit().with("key", "value").without("PATH");
+
+        // Verify
+        Map<String, String> expected = new HashMap<>(System.getenv());
+        expected.put("key", "value");
+        expected.remove("PATH");
+        assertThat(actual.getVariables(), is(expected));
+        assertThat(actual.isInherit(), is(true));
+    }
+
+    @Test
+    void of_指定した環境変数だけを持つ() throws Exception {
+        // Exercise
+        EnvironmentTemplate actual = EnvironmentTemplate.of(Collections.singletonMap("key", "value")).with("foo",
+                "bar");
+
+        // Verify
+        Map<String, String> expected = new HashMap<>();
+        expected.put("key", "value");
+        expected.put("foo", "bar");
+        assertThat(actual.getVariables(), is(expected));
+        assertThat(actual.isInherit(), is(false));
+    }
+
+    @Test
+    void with_削除した環境変数を再度設定する() throws Exception {
+        // Exercise
+        EnvironmentTemplate actual = EnvironmentTemplate.inherit().without("key").with("key", "value");
+
+        // Verify
+        assertThat(actual.getVariables().get("key"), is("value"));
+    }
+
+    @Test
+    void with_元の雛形は変更しない() throws Exception {
+        // Setup
+        EnvironmentTemplate template = EnvironmentTemplate.clean();
+
+        // Exercise
+        template.with("key", "value");
+
+        // Verify
+        assertThat(template.getVariables().isEmpty(), is(true));
+    }
+
+    @Test
+    void applyTo_現在の環境変数を引き継ぐ場合は差分だけを適用する() throws Exception {
+        // Setup
+        EnvironmentTemplate template = EnvironmentTemplate.inherit().with("key", "value").without("foo");
+        Map<String, String> environment = new HashMap<>();
+        environment.put("foo", "bar");
+        environment.put("hoge", "fuga");
+
+        // Exercise
+        template.applyTo(environment);
+
+        // Verify
+        Map<String, String> expected = new HashMap<>();
+        expected.put("key", "value");
+        expected.put("hoge", "fuga");
+        assertThat(environment, is(expected));
+    }
+
+    @Test
+    void applyTo_現在の環境変数を引き継がない場合は置き換える() throws Exception {
+        // Setup
+        EnvironmentTemplate template = EnvironmentTemplate.clean().with("key", "value");
+        Map<String, String> environment = new HashMap<>(System.getenv());
+
+        // Exercise
+        template.applyTo(environment);
+
+        // Verify
+        assertThat(environment, is(Collections.singletonMap("key", "value")));
+    }
+}
@@ -0,0 +1,184 @@
+package jp.ambrosoli.salmon.command.cache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.gen5.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.command.CommandParameter;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class CommandResultCacheTest {
+
+    @Test
+    void get_保持している実行結果を返す() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 1024L, 1L, TimeUnit.MINUTES);
+        CachedResult result = result(3);
+        cache.put(key("echo", "hoge"), result);
+
+        // Exercise
+        CachedResult actual = cache.get(key("echo", "hoge"));
+
+        // Verify
+        assertThat(actual, is(sameInstance(result)));
+        assertThat(cache.get(key("echo", "foo")), is(nullValue()));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    void put_最大数を超えた場合は最も長く参照されていないものから破棄する() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(2, 1024L, 1L, TimeUnit.MINUTES);
+        cache.put(key("echo", "1"), result(1));
+        cache.put(key("echo", "2"), result(1));
+        cache.get(key("echo", "1"));
+
+        // Exercise
+        cache.put(key("echo", "3"), result(1));
+
+        // Verify
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(key("echo", "1")), is(notNullValue()));
+        assertThat(cache.get(key("echo", "2")), is(nullValue()));
+        assertThat(cache.get(key("echo", "3")), is(notNullValue()));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    void put_バイト数の上限を超えた場合は古いものから破棄する() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 10L, 1L, TimeUnit.MINUTES);
+        cache.put(key("echo", "1"), result(4));
+        cache.put(key("echo", "2"), result(4));
+
+        // Exercise
+        cache.put(key("echo", "3"), result(4));
+
+        // Verify
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getBytes(), is(8L));
+        assertThat(cache.get(key("echo", "1")), is(nullValue()));
+    }
+
+    @Test
+    void put_上限を超える実行結果は保持しない() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 10L, 1L, TimeUnit.MINUTES);
+
+        // Exercise
+        cache.put(key("echo", "1"), result(11));
+
+        // Verify
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getBytes(), is(0L));
+    }
+
+    @Test
+    void get_期限が切れた実行結果は返さない() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 1024L, 10L, TimeUnit.MILLISECONDS);
+        cache.put(key("echo", "hoge"), result(1));
+        Thread.sleep(50L);
+
+        // Exercise
+        CachedResult actual = cache.get(key("echo", "hoge"));
+
+        // Verify
+        assertThat(actual, is(nullValue()));
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    void invalidate_実行結果を破棄する() throws Exception {
+        // Setup
+        CommandResultCache cache = new CommandResultCache(10, 1024L, 1L, TimeUnit.MINUTES);
+        cache.put(key("echo", "1"), result(1));
+        cache.put(key("echo", "2"), result(2));
+
+        // Exercise
+        cache.invalidate(key("echo", "1"));
+
+        // Verify
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getBytes(), is(2L));
+        cache.invalidateAll();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getBytes(), is(0L));
+    }
+
+    @Test
+    void コンストラクタ_上限が0以下の場合は例外() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new CommandResultCache(0, 1024L, 1L, TimeUnit.MINUTES);
+        });
+    }
+
+    @Test
+    void CommandKey_環境変数を適用した結果で比較する() throws Exception {
+        // Setup
+        Consumer<Map<String, String>> environment = env -> env.put("SALMON_TEST", "1");
+
+        // Exercise
+        CommandKey inherited = key("echo", "hoge");
+        CommandKey first = key("echo", environment, "hoge");
+        CommandKey second = key("echo", env -> env.put("SALMON_TEST", "1"), "hoge");
+        CommandKey third = key("echo", env -> env.put("SALMON_TEST", "2"), "hoge");
+
+        // Verify
+        assertThat(first, is(second));
+        assertThat(first.hashCode(), is(second.hashCode()));
+        assertThat(first, is(not(third)));
+        assertThat(first, is(not(inherited)));
+    }
+
+    @Test
+    void CommandKey_プロセスの環境変数から生成したキーと比較する() throws Exception {
+        // Setup
+        Consumer<Map<String, String>> environment = env -> env.put("SALMON_TEST", "あいう");
+        CommandParameter parameter = mock(CommandParameter.class);
+        when(parameter.getCommand()).thenReturn("echo");
+        when(parameter.getOptions()).thenReturn(Arrays.asList("hoge"));
+        when(parameter.getEnvironment()).thenReturn(environment);
+        Map<String, String> applied = new ProcessBuilder().environment();
+        environment.accept(applied);
+
+        // Exercise
+        CommandKey actual = CommandKey.of(parameter, applied);
+
+        // Verify
+        CommandKey expected = CommandKey.of(parameter);
+        assertThat(actual, is(expected));
+        assertThat(actual.hashCode(), is(expected.hashCode()));
+    }
+
+    private static CachedResult result(final int size) {
+        return new CachedResult(0, new byte[size], new byte[0]);
+    }
+
+    private static CommandKey key(final String command, final String... options) {
+        return key(command, null, options);
+    }
+
+    private static CommandKey key(final String command, final Consumer<Map<String, String>> environment,
+            final String... options) {
+        CommandParameter parameter = mock(CommandParameter.class);
+        when(parameter.getCommand()).thenReturn(command);
+        when(parameter.getOptions()).thenReturn(Arrays.asList(options));
+        when(parameter.getEnvironment()).thenReturn(environment);
+        return CommandKey.of(parameter);
+    }
+
+}
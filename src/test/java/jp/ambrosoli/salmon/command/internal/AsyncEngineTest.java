@@ -0,0 +1,74 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import static jp.ambrosoli.salmon.Salmon.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.gen5.api.Assertions.*;
+import static org.junit.gen5.api.Assumptions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.command.CommandState;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class AsyncEngineTest {
+
+    @Test
+    void getDefault_仮想スレッドを使用しない設定の場合は共有のスレッドプールを返す() throws Exception {
+        // Exercise
+        Executor actual = AsyncEngine.getDefault();
+
+        // Verify
+        assertThat(actual, is(sameInstance(AsyncEngine.platformThreads())));
+    }
+
+    @Test
+    void virtualThreads_仮想スレッドで実行する() throws Exception {
+        // Setup
+        assumeTrue(AsyncEngine.isVirtualThreadAvailable());
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+
+        // Exercise
+        AsyncEngine.virtualThreads().execute(() -> thread.complete(Thread.currentThread()));
+
+        // Verify
+        Thread actual = thread.get(5L, TimeUnit.SECONDS);
+        assertThat(actual.getName(), startsWith("salmon-virtual-"));
+        assertThat(actual.getClass().getName(), containsString("Virtual"));
+    }
+
+    @Test
+    void virtualThreads_仮想スレッドから同期的にコマンドを実行する() throws Exception {
+        // Setup
+        assumeTrue(AsyncEngine.isVirtualThreadAvailable());
+        CompletableFuture<CommandState> state = new CompletableFuture<>();
+
+        // Exercise
+        AsyncEngine.virtualThreads().execute(() -> {
+            try {
+                state.complete(command("sh").options("-c", "sleep 0.1; exit 3").execute());
+            } catch (Exception e) {
+                state.completeExceptionally(e);
+            }
+        });
+
+        // Verify
+        assertThat(state.get(10L, TimeUnit.SECONDS).getExitCode(), is(3));
+    }
+
+    @Test
+    void virtualThreads_仮想スレッドが使用できない場合は例外をスローする() throws Exception {
+        // Setup
+        assumeFalse(AsyncEngine.isVirtualThreadAvailable());
+
+        // Exercise & Verify
+        assertThrows(UnsupportedOperationException.class, () -> AsyncEngine.virtualThreads());
+    }
+}
@@ -0,0 +1,73 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.command.CommandState.Status;
+
+@RunWith(JUnit5.class)
+class CommandStateImplTest {
+
+    @Test
+    void transition_終了した後は遷移しない() throws Exception {
+        // Setup
+        CommandStateImpl state = new CommandStateImpl();
+        IllegalStateException thrown = new IllegalStateException();
+        state.transition(Status.RUNNING, null, null);
+        state.transition(Status.ERROR, null, thrown);
+
+        // Exercise
+        boolean actual = state.transition(Status.SUCCEEDED, 0, null);
+
+        // Verify
+        assertThat(actual, is(false));
+        assertThat(state.getStatus(), is(Status.ERROR));
+        assertThat(state.getExitCode(), is(nullValue()));
+        assertThat(state.getThrown(), is(sameInstance(thrown)));
+    }
+
+    @Test
+    void transition_終了の遷移が競合した場合は1回だけ反映する() throws Exception {
+        // Setup
+        CommandStateImpl state = new CommandStateImpl();
+        state.transition(Status.RUNNING, null, null);
+        AtomicInteger notified = new AtomicInteger();
+        state.addObserver(observable -> notified.incrementAndGet());
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        // Exercise
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int exitCode = i;
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (state.transition(Status.FAILED, exitCode, null)) {
+                    succeeded.incrementAndGet();
+                }
+            }));
+        }
+        start.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10L, TimeUnit.SECONDS);
+
+        // Verify
+        assertThat(succeeded.get(), is(1));
+        assertThat(notified.get(), is(1));
+        assertThat(state.getStatus(), is(Status.FAILED));
+    }
+}
@@ -0,0 +1,94 @@
+package jp.ambrosoli.salmon.command.internal;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnit5.class)
+class TimeoutWheelTest {
+
+    @Test
+    void schedule_期限切れの時点で処理が実行される() throws Exception {
+        // Setup
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        // Exercise
+        TimeoutWheel.getInstance().schedule(100L, TimeUnit.MILLISECONDS, latch::countDown);
+
+        // Verify
+        assertThat(latch.await(5L, TimeUnit.SECONDS), is(true));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100L, is(true));
+    }
+
+    @Test
+    void schedule_0以下の場合は次の刻みで処理が実行される() throws Exception {
+        // Setup
+        CountDownLatch latch = new CountDownLatch(2);
+
+        // Exercise
+        TimeoutWheel.getInstance().schedule(0L, TimeUnit.MILLISECONDS, latch::countDown);
+        TimeoutWheel.getInstance().schedule(-1L, TimeUnit.MILLISECONDS, latch::countDown);
+
+        // Verify
+        assertThat(latch.await(5L, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    void schedule_ホイールを複数周するタイムアウトも期限切れになる() throws Exception {
+        // Setup
+        CountDownLatch latch = new CountDownLatch(3);
+        TimeoutWheel wheel = TimeoutWheel.getInstance();
+
+        // Exercise
+        wheel.schedule(10L, TimeUnit.MILLISECONDS, latch::countDown);
+        wheel.schedule(500L, TimeUnit.MILLISECONDS, latch::countDown);
+        wheel.schedule(6L, TimeUnit.SECONDS, latch::countDown);
+
+        // Verify
+        assertThat(latch.await(4L, TimeUnit.SECONDS), is(false));
+        assertThat(latch.getCount(), is(1L));
+        assertThat(latch.await(10L, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    void cancel_取り消したタイムアウトは実行されない() throws Exception {
+        // Setup
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        TimeoutWheel.Timeout timeout = TimeoutWheel.getInstance().schedule(50L, TimeUnit.MILLISECONDS,
+                count::incrementAndGet);
+
+        // Exercise
+        boolean actual = timeout.cancel();
+
+        // Verify
+        TimeoutWheel.getInstance().schedule(200L, TimeUnit.MILLISECONDS, latch::countDown);
+        assertThat(latch.await(5L, TimeUnit.SECONDS), is(true));
+        assertThat(actual, is(true));
+        assertThat(count.get(), is(0));
+    }
+
+    @Test
+    void cancel_期限切れ後はfalseが返される() throws Exception {
+        // Setup
+        CountDownLatch latch = new CountDownLatch(1);
+        TimeoutWheel.Timeout timeout = TimeoutWheel.getInstance().schedule(0L, TimeUnit.MILLISECONDS,
+                latch::countDown);
+        latch.await(5L, TimeUnit.SECONDS);
+
+        // Exercise
+        boolean actual = timeout.cancel();
+
+        // Verify
+        assertThat(actual, is(false));
+    }
+
+}
@@ -0,0 +1,214 @@
+package jp.ambrosoli.salmon.command.io;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class DemandSinkTest {
+
+    @Test
+    void request_要求した件数だけ通知する() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.start();
+        sink.request(2L);
+
+        // Exercise
+        write(sink, "a");
+        write(sink, "b");
+        write(sink, "c");
+
+        // Verify
+        assertThat(sink.signals, is(Arrays.asList("next:a", "next:b")));
+        assertThat(sink.isReady(), is(false));
+    }
+
+    @Test
+    void request_要求がない場合は読み取りを止める() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.start();
+
+        // Exercise
+        boolean ready = sink.isReady();
+
+        // Verify
+        assertThat(ready, is(false));
+        sink.request(1L);
+        assertThat(sink.isReady(), is(true));
+    }
+
+    @Test
+    void start_開始前は通知しない() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.request(1L);
+        write(sink, "a");
+        sink.close();
+
+        // Exercise
+        List<String> before = new ArrayList<>(sink.signals);
+        sink.start();
+
+        // Verify
+        assertThat(before, is(Collections.<String> emptyList()));
+        assertThat(sink.signals, is(Arrays.asList("next:a", "complete")));
+    }
+
+    @Test
+    void close_全て通知した後に完了を通知する() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.start();
+        write(sink, "a");
+        sink.close();
+
+        // Exercise
+        List<String> before = new ArrayList<>(sink.signals);
+        sink.request(1L);
+
+        // Verify
+        assertThat(before, is(Collections.<String> emptyList()));
+        assertThat(sink.signals, is(Arrays.asList("next:a", "complete")));
+    }
+
+    @Test
+    void request_0以下の場合はエラーを通知する() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.start();
+        write(sink, "a");
+
+        // Exercise
+        sink.request(0L);
+
+        // Verify
+        assertThat(sink.signals.size(), is(1));
+        assertThat(sink.signals.get(0), startsWith("error:" + IllegalArgumentException.class.getName()));
+        assertThat(sink.isReady(), is(true));
+        sink.request(1L);
+        sink.close();
+        assertThat(sink.signals.size(), is(1));
+    }
+
+    @Test
+    void request_通知中に0以下を要求した場合は通知の後にエラーを通知する() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink() {
+
+            @Override
+            protected void onNext(final ByteBuffer buffer) {
+                super.onNext(buffer);
+                request(-1L);
+            }
+        };
+        sink.start();
+        write(sink, "a");
+        write(sink, "b");
+
+        // Exercise
+        sink.request(2L);
+
+        // Verify
+        assertThat(sink.signals.size(), is(2));
+        assertThat(sink.signals.get(0), is("next:a"));
+        assertThat(sink.signals.get(1), startsWith("error:" + IllegalArgumentException.class.getName()));
+    }
+
+    @Test
+    void abort_未通知の出力を破棄してエラーを通知する() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.start();
+        write(sink, "a");
+        IOException cause = new IOException("hoge");
+
+        // Exercise
+        sink.abort(cause);
+
+        // Verify
+        assertThat(sink.signals, is(Arrays.asList("error:java.io.IOException: hoge")));
+        assertThat(sink.isReady(), is(true));
+        write(sink, "b");
+        sink.close();
+        assertThat(sink.signals.size(), is(1));
+    }
+
+    @Test
+    void cancel_以降の出力は読み捨てる() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink();
+        sink.start();
+        write(sink, "a");
+
+        // Exercise
+        sink.cancel();
+
+        // Verify
+        assertThat(sink.isReady(), is(true));
+        sink.request(1L);
+        write(sink, "b");
+        sink.close();
+        assertThat(sink.signals, is(Collections.<String> emptyList()));
+    }
+
+    @Test
+    void onNext_購読者が例外をスローした場合は購読を取り消す() throws Exception {
+        // Setup
+        RecordingSink sink = new RecordingSink() {
+
+            @Override
+            protected void onNext(final ByteBuffer buffer) {
+                throw new IllegalStateException();
+            }
+        };
+        sink.start();
+        sink.request(2L);
+
+        // Exercise
+        write(sink, "a");
+
+        // Verify
+        assertThat(sink.isReady(), is(true));
+        write(sink, "b");
+        sink.close();
+        assertThat(sink.signals, is(Collections.<String> emptyList()));
+    }
+
+    private static void write(final OutputSink sink, final String value) throws Exception {
+        sink.write(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static class RecordingSink extends DemandSink {
+
+        final List<String> signals = new ArrayList<>();
+
+        @Override
+        protected void onNext(final ByteBuffer buffer) {
+            signals.add("next:" + StandardCharsets.UTF_8.decode(buffer));
+        }
+
+        @Override
+        protected void onError(final Throwable thrown) {
+            signals.add("error:" + thrown);
+        }
+
+        @Override
+        protected void onComplete() {
+            signals.add("complete");
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package jp.ambrosoli.salmon.command.io;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.gen5.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.utils.IOUtil;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class OutputSinksTest {
+
+    @Test
+    void capture_書き込んだ内容を全て保持する() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.capture();
+
+        // Exercise
+        write(sink, "hoge");
+        write(sink, "foo");
+        sink.close();
+
+        // Verify
+        CapturedOutput captured = (CapturedOutput) sink;
+        assertThat(captured.size(), is(7));
+        assertThat(new String(captured.toByteArray(), StandardCharsets.UTF_8), is("hogefoo"));
+        assertThat(IOUtil.readAll(captured.openStream(), StandardCharsets.UTF_8), is("hogefoo"));
+    }
+
+    @Test
+    void tail_末尾のみを保持する() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.tail(5);
+
+        // Exercise
+        write(sink, "abc");
+        write(sink, "def");
+        write(sink, "gh");
+        sink.close();
+
+        // Verify
+        CapturedOutput captured = (CapturedOutput) sink;
+        assertThat(captured.size(), is(5));
+        assertThat(new String(captured.toByteArray(), StandardCharsets.UTF_8), is("defgh"));
+        assertThat(IOUtil.readAll(captured.openStream(), StandardCharsets.UTF_8), is("defgh"));
+    }
+
+    @Test
+    void tail_バッファより大きい書き込み() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.tail(4);
+
+        // Exercise
+        write(sink, "a");
+        write(sink, "0123456789");
+        write(sink, "x");
+
+        // Verify
+        assertThat(new String(((CapturedOutput) sink).toByteArray(), StandardCharsets.UTF_8), is("789x"));
+    }
+
+    @Test
+    void tailLines_末尾の行のみを保持する() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.tailLines(2);
+
+        // Exercise
+        write(sink, "1\n2\n3");
+        write(sink, "\n4\n");
+
+        // Verify
+        assertThat(new String(((CapturedOutput) sink).toByteArray(), StandardCharsets.UTF_8), is("3\n4\n"));
+        assertThat(((CapturedOutput) sink).size(), is(4));
+    }
+
+    @Test
+    void tailLines_リングバッファが一周した場合も末尾の行のみを保持する() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.tailLines(2, 8);
+
+        // Exercise
+        write(sink, "111\n222\n");
+        write(sink, "33\n44\n");
+
+        // Verify
+        assertThat(new String(((CapturedOutput) sink).toByteArray(), StandardCharsets.UTF_8), is("33\n44\n"));
+        assertThat(((CapturedOutput) sink).size(), is(6));
+    }
+
+    @Test
+    void tailLines_バイト数の上限を超えない() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.tailLines(10, 6);
+
+        // Exercise
+        write(sink, "111\n222\n333\n");
+
+        // Verify
+        assertThat(new String(((CapturedOutput) sink).toByteArray(), StandardCharsets.UTF_8), is("2\n333\n"));
+    }
+
+    @Test
+    void lines_行ごとにイベントハンドラが呼び出される() throws Exception {
+        // Setup
+        List<String> lines = new ArrayList<>();
+        OutputSink sink = OutputSinks.lines(StandardCharsets.UTF_8, line -> lines.add(line.toString()));
+        byte[] bytes = "あい\r\nう\n\nえお".getBytes(StandardCharsets.UTF_8);
+
+        // Exercise
+        for (byte b : bytes) {
+            // マルチバイト文字が書き込みをまたぐよう1バイトずつ書き込む
+            sink.write(ByteBuffer.wrap(new byte[] { b }));
+        }
+        sink.close();
+
+        // Verify
+        assertThat(lines, is(Arrays.asList("あい", "う", "", "えお")));
+    }
+
+    @Test
+    void lines_バッファより長い行() throws Exception {
+        // Setup
+        List<String> lines = new ArrayList<>();
+        OutputSink sink = OutputSinks.lines(StandardCharsets.UTF_8, line -> lines.add(line.toString()));
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            longLine.append(i % 10);
+        }
+
+        // Exercise
+        write(sink, longLine + "\nhoge\n");
+        sink.close();
+
+        // Verify
+        assertThat(lines, is(Arrays.asList(longLine.toString(), "hoge")));
+    }
+
+    @Test
+    void lines_サロゲートペアがバッファの末尾をまたぐ行() throws Exception {
+        // Setup
+        List<String> lines = new ArrayList<>();
+        OutputSink sink = OutputSinks.lines(StandardCharsets.UTF_8, line -> lines.add(line.toString()));
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 255; i++) {
+            line.append('x');
+        }
+        // バッファの最後の1文字分の空きにサロゲートペアが収まらないようにする
+        line.append("\uD83D\uDE00");
+
+        // Exercise
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            try {
+                write(sink, line + "\n");
+                sink.close();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+
+        // Verify
+        future.get(5L, TimeUnit.SECONDS);
+        assertThat(lines, is(Arrays.asList(line.toString())));
+    }
+
+    @Test
+    void tee_両方に書き込む() throws Exception {
+        // Setup
+        OutputSink first = OutputSinks.capture();
+        OutputSink second = OutputSinks.tail(3);
+        OutputSink sink = OutputSinks.tee(first, second);
+
+        // Exercise
+        write(sink, "hoge");
+        sink.close();
+
+        // Verify
+        assertThat(new String(((CapturedOutput) first).toByteArray(), StandardCharsets.UTF_8), is("hoge"));
+        assertThat(new String(((CapturedOutput) second).toByteArray(), StandardCharsets.UTF_8), is("oge"));
+    }
+
+    @Test
+    void tee_中断を両方に通知する() throws Exception {
+        // Setup
+        List<Throwable> aborted = new ArrayList<>();
+        OutputSink first = new OutputSink() {
+
+            @Override
+            public void write(final ByteBuffer buffer) {
+                buffer.position(buffer.limit());
+            }
+
+            @Override
+            public void abort(final Throwable cause) {
+                aborted.add(cause);
+            }
+        };
+        OutputSink second = OutputSinks.capture();
+        OutputSink sink = OutputSinks.tee(first, second);
+        Exception cause = new Exception("hoge");
+
+        // Exercise
+        write(sink, "hoge");
+        sink.abort(cause);
+
+        // Verify
+        assertThat(aborted, is(Arrays.asList(cause)));
+        assertThat(IOUtil.readAll(((CapturedOutput) second).openStream(), StandardCharsets.UTF_8), is("hoge"));
+    }
+
+    @Test
+    void spill_閾値以下の場合はメモリ上に保持する() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.spill(8);
+
+        // Exercise
+        write(sink, "hoge");
+        write(sink, "foo");
+        sink.close();
+
+        // Verify
+        SpilledOutput spilled = (SpilledOutput) sink;
+        assertThat(spilled.isSpilled(), is(false));
+        assertThat(spilled.length(), is(7L));
+        assertThat(new String(spilled.toByteArray(), StandardCharsets.UTF_8), is("hogefoo"));
+        assertThat(StandardCharsets.UTF_8.decode(spilled.asByteBuffer()).toString(), is("hogefoo"));
+        spilled.release();
+    }
+
+    @Test
+    void spill_閾値を超えた場合は一時ファイルに退避する() throws Exception {
+        // Setup
+        Path directory = Files.createTempDirectory("");
+        OutputSink sink = OutputSinks.spill(4, directory);
+
+        try {
+            // Exercise
+            write(sink, "hoge");
+            write(sink, "foo");
+            InputStream stream = ((SpilledOutput) sink).openStream();
+            write(sink, "bar");
+            sink.close();
+
+            // Verify
+            SpilledOutput spilled = (SpilledOutput) sink;
+            assertThat(spilled.isSpilled(), is(true));
+            assertThat(spilled.size(), is(10));
+            assertThat(spilled.toPath().getParent(), is(directory));
+            assertThat(new String(Files.readAllBytes(spilled.toPath()), StandardCharsets.UTF_8), is("hogefoobar"));
+            assertThat(new String(spilled.toByteArray(), StandardCharsets.UTF_8), is("hogefoobar"));
+            assertThat(StandardCharsets.UTF_8.decode(spilled.asByteBuffer()).toString(), is("hogefoobar"));
+            assertThat(IOUtil.readAll(stream, StandardCharsets.UTF_8), is("hogefoobar"));
+        } finally {
+            // Teardown
+            ((SpilledOutput) sink).release();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                assertThat(files.iterator().hasNext(), is(false));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void spill_toPathを呼び出した時点で一時ファイルに退避する() throws Exception {
+        // Setup
+        OutputSink sink = OutputSinks.spill(1024);
+        write(sink, "hoge");
+        sink.close();
+        SpilledOutput spilled = (SpilledOutput) sink;
+
+        // Exercise
+        Path path = spilled.toPath();
+
+        // Verify
+        assertThat(spilled.isSpilled(), is(true));
+        assertThat(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), is("hoge"));
+        spilled.release();
+        assertThat(Files.exists(path), is(false));
+    }
+
+    @Test
+    void channel_チャネルに書き込む() throws Exception {
+        // Setup
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OutputSink sink = OutputSinks.channel(Channels.newChannel(output));
+
+        // Exercise
+        write(sink, "hoge");
+        write(sink, "foo");
+        sink.close();
+
+        // Verify
+        assertThat(new String(output.toByteArray(), StandardCharsets.UTF_8), is("hogefoo"));
+    }
+
+    @Test
+    void channel_ノンブロッキングモードの場合は例外() throws Exception {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            assertThrows(IllegalArgumentException.class, () -> {
+                OutputSinks.channel(pipe.sink());
+            });
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    @Test
+    void channel_位置が負の場合は例外() throws Exception {
+        Path tempFile = Files.createTempFile("", "");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            assertThrows(IllegalArgumentException.class, () -> {
+                OutputSinks.channel(channel, -1L);
+            });
+        } finally {
+            Files.delete(tempFile);
+        }
+    }
+
+    @Test
+    void tail_0以下の場合は例外() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> {
+            OutputSinks.tail(0);
+        });
+    }
+
+    private static void write(final OutputSink sink, final String value) throws Exception {
+        sink.write(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,165 @@
+package jp.ambrosoli.salmon.command.posix;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.gen5.api.Assumptions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.gen5.api.BeforeAll;
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+import jp.ambrosoli.salmon.utils.PlatformUtil;
+
+@RunWith(JUnit5.class)
+@SuppressWarnings("nls")
+class ExecutableResolverTest {
+
+    @BeforeAll
+    static void beforeAll() {
+        assumeTrue(PlatformUtil.isUnix());
+    }
+
+    @Test
+    void resolve_PATHの先頭から実行ファイルを検索する() throws Exception {
+        // Setup
+        Path first = Files.createTempDirectory("salmon");
+        Path second = Files.createTempDirectory("salmon");
+
+        try {
+            createFile(first, "tool", "rw-r--r--");
+            Path expected = createFile(second, "tool", "rwxr-xr-x");
+            createFile(Files.createDirectory(first.resolve("dir")), "tool", "rwxr-xr-x");
+
+            // Exercise
+            String actual = new ExecutableResolver().resolve("tool", first + File.pathSeparator + second);
+
+            // Verify
+            assertThat(actual, is(expected.toString()));
+        } finally {
+            // Teardown
+            delete(first);
+            delete(second);
+        }
+    }
+
+    @Test
+    void resolve_前にあるディレクトリに実行ファイルが追加された場合は再検索する() throws Exception {
+        // Setup
+        Path first = Files.createTempDirectory("salmon");
+        Path second = Files.createTempDirectory("salmon");
+
+        try {
+            createFile(second, "tool", "rwxr-xr-x");
+            String path = first + File.pathSeparator + second;
+            ExecutableResolver resolver = new ExecutableResolver();
+            resolver.resolve("tool", path);
+            Path expected = createFile(first, "tool", "rwxr-xr-x");
+            touch(first);
+
+            // Exercise
+            String actual = resolver.resolve("tool", path);
+
+            // Verify
+            assertThat(actual, is(expected.toString()));
+        } finally {
+            // Teardown
+            delete(first);
+            delete(second);
+        }
+    }
+
+    @Test
+    void resolve_実行ファイルが見つからない場合はコマンド名を返す() throws Exception {
+        // Setup
+        Path directory = Files.createTempDirectory("salmon");
+        ExecutableResolver resolver = new ExecutableResolver();
+
+        try {
+            // Exercise
+            String actual = resolver.resolve("tool", directory.toString());
+
+            // Verify
+            assertThat(actual, is("tool"));
+            Path expected = createFile(directory, "tool", "rwxr-xr-x");
+            touch(directory);
+            assertThat(resolver.resolve("tool", directory.toString()), is(expected.toString()));
+        } finally {
+            // Teardown
+            delete(directory);
+        }
+    }
+
+    @Test
+    void resolve_パスを含むコマンド名は解決しない() throws Exception {
+        // Setup
+        Path directory = Files.createTempDirectory("salmon");
+
+        try {
+            createFile(directory, "tool", "rwxr-xr-x");
+
+            // Exercise
+            String actual = new ExecutableResolver().resolve("./tool", directory.toString());
+
+            // Verify
+            assertThat(actual, is("./tool"));
+        } finally {
+            // Teardown
+            delete(directory);
+        }
+    }
+
+    @Test
+    void resolve_相対パスを含むPATHでは解決しない() throws Exception {
+        // Setup
+        Path directory = Files.createTempDirectory("salmon");
+
+        try {
+            createFile(directory, "tool", "rwxr-xr-x");
+
+            // Exercise
+            String actual = new ExecutableResolver().resolve("tool", directory + File.pathSeparator);
+
+            // Verify
+            assertThat(actual, is("tool"));
+        } finally {
+            // Teardown
+            delete(directory);
+        }
+    }
+
+    private static Path createFile(final Path directory, final String name, final String permissions)
+            throws IOException {
+        Path file = directory.resolve(name);
+        Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions)));
+        return file;
+    }
+
+    private static void touch(final Path directory) throws IOException {
+        // 最終更新日時の精度が粗いファイルシステムでも変更を検知できるよう、明示的にずらす
+        FileTime lastModified = Files.getLastModifiedTime(directory);
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(lastModified.toMillis() + 2000L));
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        // ディレクトリの中身から順に削除する
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import org.junit.gen5.api.Test;
 import org.junit.gen5.junit4.runner.JUnit5;
 import org.junit.runner.RunWith;
 
+import jp.ambrosoli.salmon.command.RejectionPolicy;
+import jp.ambrosoli.salmon.command.posix.LaunchMechanism;
 import jp.ambrosoli.salmon.test.util.SalmonConfigAccessor;
 
 @RunWith(JUnit5.class)
@@ -28,6 +30,24 @@ class SalmonConfigTest {
         // Verify
         assertAll(() -> {
             assertThat(SalmonConfig.isAutoMSDos(), is(false));
+            assertThat(SalmonConfig.getLaunchMechanism(), is(nullValue()));
+            assertThat(SalmonConfig.isAsyncVirtualThread(), is(false));
+            assertThat(SalmonConfig.isExecutableCache(), is(true));
+            assertThat(SalmonConfig.getAsyncPoolCoreSize(), is(64));
+            assertThat(SalmonConfig.getAsyncPoolMaxSize(), is(256));
+            assertThat(SalmonConfig.getAsyncPoolQueueCapacity(), is(1024));
+            assertThat(SalmonConfig.getAsyncPoolKeepAliveMillis(), is(60000L));
+            assertThat(SalmonConfig.getAsyncPoolRejectionPolicy(), is(RejectionPolicy.CALLER_RUNS));
+            assertThat(SalmonConfig.getReaperPollIntervalMillis(), is(50L));
+            assertThat(SalmonConfig.getTimeoutTickMillis(), is(10L));
+            assertThat(SalmonConfig.getTimeoutWheelSize(), is(512));
+            assertThat(SalmonConfig.getPumpBufferSize(), is(8192));
+            assertThat(SalmonConfig.isPumpMultiplexed(), is(false));
+            assertThat(SalmonConfig.getPumpThreads(), is(2));
+            assertThat(SalmonConfig.getPumpDrainTimeoutMillis(), is(1000L));
+            assertThat(SalmonConfig.getPumpPollIntervalMillis(), is(10L));
+            assertThat(SalmonConfig.getIoBufferSize(), is(8192));
+            assertThat(SalmonConfig.getHandlerSlowThresholdMillis(), is(1000L));
         });
     }
 
@@ -42,6 +62,24 @@ class SalmonConfigTest {
         // Verify
         assertAll(() -> {
             assertThat(SalmonConfig.isAutoMSDos(), is(true));
+            assertThat(SalmonConfig.getLaunchMechanism(), is(LaunchMechanism.VFORK));
+            assertThat(SalmonConfig.isAsyncVirtualThread(), is(true));
+            assertThat(SalmonConfig.isExecutableCache(), is(false));
+            assertThat(SalmonConfig.getAsyncPoolCoreSize(), is(2));
+            assertThat(SalmonConfig.getAsyncPoolMaxSize(), is(8));
+            assertThat(SalmonConfig.getAsyncPoolQueueCapacity(), is(16));
+            assertThat(SalmonConfig.getAsyncPoolKeepAliveMillis(), is(1000L));
+            assertThat(SalmonConfig.getAsyncPoolRejectionPolicy(), is(RejectionPolicy.ABORT));
+            assertThat(SalmonConfig.getReaperPollIntervalMillis(), is(10L));
+            assertThat(SalmonConfig.getTimeoutTickMillis(), is(5L));
+            assertThat(SalmonConfig.getTimeoutWheelSize(), is(64));
+            assertThat(SalmonConfig.getPumpBufferSize(), is(1024));
+            assertThat(SalmonConfig.isPumpMultiplexed(), is(true));
+            assertThat(SalmonConfig.getPumpThreads(), is(4));
+            assertThat(SalmonConfig.getPumpDrainTimeoutMillis(), is(500L));
+            assertThat(SalmonConfig.getPumpPollIntervalMillis(), is(5L));
+            assertThat(SalmonConfig.getIoBufferSize(), is(4096));
+            assertThat(SalmonConfig.getHandlerSlowThresholdMillis(), is(200L));
         });
     }
 
@@ -69,4 +107,95 @@ class SalmonConfigTest {
         assertThat(SalmonConfig.isAutoMSDos(), is(false));
     }
 
+    @Test
+    void posix_launch_mechanismの設定値がない場合_getLaunchMechanismがnullを返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.empty");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertThat(SalmonConfig.getLaunchMechanism(), is(nullValue()));
+    }
+
+    @Test
+    void posix_launch_mechanismの設定値が不正な場合_getLaunchMechanismがnullを返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.invalid");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertThat(SalmonConfig.getLaunchMechanism(), is(nullValue()));
+    }
+
+    @Test
+    void posix_executable_cacheの設定値がない場合_isExecutableCacheがtrueを返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.empty");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertThat(SalmonConfig.isExecutableCache(), is(true));
+    }
+
+    @Test
+    void async_poolの設定値が不正な場合_デフォルト値を返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.invalid");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertAll(() -> {
+            assertThat(SalmonConfig.getAsyncPoolCoreSize(), is(64));
+            assertThat(SalmonConfig.getAsyncPoolMaxSize(), is(256));
+            assertThat(SalmonConfig.getAsyncPoolQueueCapacity(), is(1024));
+            assertThat(SalmonConfig.getAsyncPoolKeepAliveMillis(), is(60000L));
+            assertThat(SalmonConfig.getAsyncPoolRejectionPolicy(), is(RejectionPolicy.CALLER_RUNS));
+
+        });
+    }
+
+    @Test
+    void io_buffer_sizeの設定値が不正な場合_デフォルト値を返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.invalid");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertThat(SalmonConfig.getIoBufferSize(), is(8192));
+    }
+
+    @Test
+    void pump_drain_timeoutの設定値が不正な場合_デフォルト値を返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.invalid");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertThat(SalmonConfig.getPumpDrainTimeoutMillis(), is(1000L));
+    }
+
+    @Test
+    void handler_slow_thresholdの設定値が不正な場合_デフォルト値を返すこと() throws Exception {
+        // Setup
+        SalmonConfigAccessor.deploy(this, "salmon.properties.invalid");
+
+        // Exercise
+        SalmonConfig.initialize();
+
+        // Verify
+        assertThat(SalmonConfig.getHandlerSlowThresholdMillis(), is(1000L));
+    }
+
 }
@@ -0,0 +1,102 @@
+package jp.ambrosoli.salmon.event;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnit5.class)
+class EventDispatcherTest {
+
+    @Test
+    void execute_受け付けた順に1件ずつ実行する() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        EventDispatcher dispatcher = new EventDispatcher(executor);
+        List<Integer> actual = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            // Exercise
+            for (int i = 0; i < 100; i++) {
+                int value = i;
+                dispatcher.execute(() -> actual.add(value));
+            }
+            dispatcher.execute(done::countDown);
+
+            // Verify
+            assertThat(done.await(5L, TimeUnit.SECONDS), is(true));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                expected.add(i);
+            }
+            assertThat(actual, is(expected));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void execute_実行を待っている件数を集計する() throws Exception {
+        // Setup
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        EventDispatcher dispatcher = new EventDispatcher(executor);
+        HandlerMetrics metrics = HandlerMetrics.getInstance();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            dispatcher.execute(() -> {
+                started.countDown();
+                try {
+                    release.await(5L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            started.await(5L, TimeUnit.SECONDS);
+            int before = metrics.getQueueDepth();
+
+            // Exercise
+            dispatcher.execute(() -> {
+            });
+            dispatcher.execute(done::countDown);
+
+            // Verify
+            assertThat(metrics.getQueueDepth() - before, is(2));
+            assertThat(metrics.getMaxQueueDepth() >= 2, is(true));
+            release.countDown();
+            assertThat(done.await(5L, TimeUnit.SECONDS), is(true));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void execute_実行を拒否された場合は呼び出し元のスレッドで実行する() throws Exception {
+        // Setup
+        EventDispatcher dispatcher = new EventDispatcher(task -> {
+            throw new RejectedExecutionException();
+        });
+        List<String> actual = new ArrayList<>();
+
+        // Exercise
+        dispatcher.execute(() -> actual.add(Thread.currentThread().getName()));
+
+        // Verify
+        assertThat(actual, is(Collections.singletonList(Thread.currentThread().getName())));
+    }
+}
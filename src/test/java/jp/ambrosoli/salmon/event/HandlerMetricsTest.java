@@ -0,0 +1,43 @@
+package jp.ambrosoli.salmon.event;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnit5.class)
+class HandlerMetricsTest {
+
+    @Test
+    void fireEvent_イベントハンドラの実行件数を集計する() throws Exception {
+        // Setup
+        HandlerMetrics metrics = HandlerMetrics.getInstance();
+        long before = metrics.getHandledCount();
+
+        // Exercise
+        EventHandlerHelper.fireEvent(Collections.<EventHandler<String>> nCopies(3, event -> {
+        }), "event");
+
+        // Verify
+        assertThat(metrics.getHandledCount() - before >= 3, is(true));
+    }
+
+    @Test
+    void recordHandler_閾値以上かかったイベントハンドラを遅いイベントハンドラとして数える() throws Exception {
+        // Setup
+        HandlerMetrics metrics = HandlerMetrics.getInstance();
+        long before = metrics.getSlowHandlerCount();
+
+        // Exercise
+        metrics.recordHandler(TimeUnit.HOURS.toNanos(1L));
+
+        // Verify
+        assertThat(metrics.getSlowHandlerCount() - before >= 1, is(true));
+        assertThat(metrics.getMaxHandlerTime(TimeUnit.HOURS) >= 1L, is(true));
+    }
+}
@@ -0,0 +1,72 @@
+package jp.ambrosoli.salmon.utils;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.gen5.api.Test;
+import org.junit.gen5.junit4.runner.JUnit5;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnit5.class)
+class BufferPoolTest {
+
+    @Test
+    void acquire_返却したバッファを再利用する() throws Exception {
+        // Setup
+        ByteBuffer buffer = BufferPool.acquire();
+        buffer.put((byte) 1);
+        BufferPool.release(buffer);
+
+        // Exercise
+        ByteBuffer actual = BufferPool.acquire();
+
+        // Verify
+        assertThat(actual, is(sameInstance(buffer)));
+        assertThat(actual.position(), is(0));
+        assertThat(actual.remaining(), is(BufferPool.getBufferSize()));
+        BufferPool.release(actual);
+    }
+
+    @Test
+    void acquire_取得中のバッファは別のバッファを返す() throws Exception {
+        // Exercise
+        ByteBuffer first = BufferPool.acquire();
+        ByteBuffer second = BufferPool.acquire();
+
+        // Verify
+        assertThat(second, is(not(sameInstance(first))));
+        BufferPool.release(second);
+        BufferPool.release(first);
+    }
+
+    @Test
+    void acquire_スレッドごとにバッファを保持する() throws Exception {
+        // Setup
+        ByteBuffer buffer = BufferPool.acquire();
+        BufferPool.release(buffer);
+
+        // Exercise
+        ByteBuffer actual = CompletableFuture.supplyAsync(BufferPool::acquire).get();
+
+        // Verify
+        assertThat(actual, is(not(sameInstance(buffer))));
+    }
+
+    @Test
+    void release_サイズが異なるバッファは保持しない() throws Exception {
+        // Setup
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.getBufferSize() + 1);
+
+        // Exercise
+        BufferPool.release(buffer);
+
+        // Verify
+        ByteBuffer actual = BufferPool.acquire();
+        assertThat(actual, is(not(sameInstance(buffer))));
+        BufferPool.release(actual);
+    }
+
+}
@@ -11,13 +11,21 @@ import static org.mockito.Mockito.*;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.junit.gen5.api.Test;
@@ -281,6 +289,102 @@ class IOUtilTest {
         });
     }
 
+    //*******************************************************
+    // readAll(InputStream, Charset, long)
+    //*******************************************************
+    @Test
+    void readAll_InputStream_Charset_long_上限以下() throws Exception {
+        // SetUp
+        InputStream stream = spy(new ByteArrayInputStream("hoge".getBytes(MS932)));
+
+        // Exercise
+        String actual = IOUtil.readAll(stream, MS932, 4L);
+
+        // Verify
+        assertThat(actual, is("hoge"));
+        verify(stream).close();
+    }
+
+    @Test
+    void readAll_InputStream_Charset_long_上限を超える() throws Exception {
+        // SetUp
+        InputStream stream = spy(new ByteArrayInputStream("hogefoo".getBytes(MS932)));
+
+        // Exercise
+        String actual = IOUtil.readAll(stream, MS932, 4L);
+
+        // Verify
+        assertThat(actual, is("hoge"));
+        verify(stream).close();
+    }
+
+    @Test
+    void readAll_InputStream_Charset_long_上限に達した場合は終端を待たない() throws Exception {
+        // SetUp
+        PipedInputStream stream = new PipedInputStream();
+        try (PipedOutputStream producer = new PipedOutputStream(stream)) {
+            producer.write("hogef".getBytes(MS932));
+
+            // Exercise
+            CompletableFuture<String> actual = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return IOUtil.readAll(stream, MS932, 5L);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            // Verify
+            assertThat(actual.get(5L, TimeUnit.SECONDS), is("hogef"));
+        }
+    }
+
+    @Test
+    void readAll_InputStream_Charset_long_途中で切れた文字は取り除く() throws Exception {
+        // SetUp
+        InputStream stream = new ByteArrayInputStream("私はペンです。".getBytes(MS932));
+
+        // Exercise
+        String actual = IOUtil.readAll(stream, MS932, 5L);
+
+        // Verify
+        assertThat(actual, is("私は"));
+    }
+
+    //*******************************************************
+    // readAll(InputStream, Charset, int, long)
+    //*******************************************************
+    @Test
+    void readAll_InputStream_Charset_int_long_見込みより大きい() throws Exception {
+        // SetUp
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("私はペンです。");
+        }
+        InputStream stream = new ByteArrayInputStream(builder.toString().getBytes(MS932));
+
+        // Exercise
+        String actual = IOUtil.readAll(stream, MS932, 16, Long.MAX_VALUE);
+
+        // Verify
+        assertThat(actual, is(builder.toString()));
+    }
+
+    @Test
+    void readAll_InputStream_Charset_int_long_文字コードを切り替える() throws Exception {
+        // SetUp
+        InputStream first = new ByteArrayInputStream("私はペンです。".getBytes(MS932));
+        InputStream second = new ByteArrayInputStream("我一支钢笔".getBytes(Charset.forName("GB2312")));
+
+        // Exercise
+        String actualFirst = IOUtil.readAll(first, MS932, 0, Long.MAX_VALUE);
+        String actualSecond = IOUtil.readAll(second, Charset.forName("GB2312"), 0, Long.MAX_VALUE);
+
+        // Verify
+        assertThat(actualFirst, is("私はペンです。"));
+        assertThat(actualSecond, is("我一支钢笔"));
+    }
+
     //*******************************************************
     // readAllSilently(InputStream)
     //*******************************************************
@@ -551,6 +655,65 @@ class IOUtilTest {
         verify(source).close();
     }
 
+    @Test
+    void copy_ファイル同士() throws Exception {
+        // SetUp
+        Path sourceFile = Files.createTempFile("", "");
+        Path destFile = Files.createTempFile("", "");
+        byte[] content = new byte[1024 * 1024];
+        new Random(0).nextBytes(content);
+        Files.write(sourceFile, content);
+
+        try {
+            // Exercise
+            IOUtil.copy(new FileInputStream(sourceFile.toFile()), new FileOutputStream(destFile.toFile()));
+
+            // Verify
+            assertThat(Files.readAllBytes(destFile), is(content));
+        } finally {
+            // Teardown
+            Files.delete(sourceFile);
+            Files.delete(destFile);
+        }
+    }
+
+    @Test
+    void copy_読み取り済みのファイルは続きからコピーする() throws Exception {
+        // SetUp
+        Path sourceFile = Files.createTempFile("", "");
+        Path destFile = Files.createTempFile("", "");
+        Files.write(sourceFile, "hogefoo".getBytes());
+
+        try {
+            FileInputStream source = new FileInputStream(sourceFile.toFile());
+            source.skip(4L);
+
+            // Exercise
+            IOUtil.copy(source, new FileOutputStream(destFile.toFile()));
+
+            // Verify
+            assertThat(new String(Files.readAllBytes(destFile)), is("foo"));
+        } finally {
+            // Teardown
+            Files.delete(sourceFile);
+            Files.delete(destFile);
+        }
+    }
+
+    @Test
+    void copy_バッファより大きい() throws Exception {
+        // SetUp
+        byte[] content = new byte[BufferPool.getBufferSize() * 3 + 1];
+        new Random(0).nextBytes(content);
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+
+        // Exercise
+        IOUtil.copy(new ByteArrayInputStream(content), dest);
+
+        // Verify
+        assertThat(dest.toByteArray(), is(content));
+    }
+
     //*******************************************************
     // copySilently(InputStream, OutputStream)
     //*******************************************************